@@ -0,0 +1,70 @@
+/**
+ * SIMD versions of the PixelKernels masked compares, on the incubating
+ * Vector API. PixelKernels loads this class by name only when the JVM runs with the
+ * jdk.incubator.vector module, so the rest of the app builds and runs without it.
+ *
+ * Build it after the main sources, into the same output directory:
+ *   javac --add-modules jdk.incubator.vector -cp <out> -d <out> src-vector/VectorPixelKernels.java
+ * and run with: java --add-modules jdk.incubator.vector -cp <out> PaintApp
+ */
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public final class VectorPixelKernels implements PixelKernels.Accelerated {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public int matchExact(int[] src, int offset, int length, int target, byte[] mask, int maskOffset) {
+        int count = 0;
+        int i = 0;
+        for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+            VectorMask<Integer> match = IntVector.fromArray(INTS, src, offset + i).eq(target);
+            count += writeMask(match, mask, maskOffset + i);
+        }
+        for (; i < length; i++) {
+            int match = (src[offset + i] == target) ? 1 : 0;
+            mask[maskOffset + i] = (byte) match;
+            count += match;
+        }
+        return count;
+    }
+
+    @Override
+    public int matchTolerance(int[] src, int offset, int length, int target, int tolerance,
+                              byte[] mask, int maskOffset) {
+        int ta = target >>> 24, tr = (target >> 16) & 0xFF, tg = (target >> 8) & 0xFF, tb = target & 0xFF;
+        int count = 0;
+        int i = 0;
+        for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+            IntVector p = IntVector.fromArray(INTS, src, offset + i);
+            IntVector da = p.lanewise(VectorOperators.LSHR, 24).sub(ta).abs();
+            IntVector dr = p.lanewise(VectorOperators.LSHR, 16).and(0xFF).sub(tr).abs();
+            IntVector dg = p.lanewise(VectorOperators.LSHR, 8).and(0xFF).sub(tg).abs();
+            IntVector db = p.and(0xFF).sub(tb).abs();
+            VectorMask<Integer> match = da.max(dr).max(dg.max(db)).compare(VectorOperators.LE, tolerance);
+            count += writeMask(match, mask, maskOffset + i);
+        }
+        for (; i < length; i++) {
+            int p = src[offset + i];
+            int d = Math.max(Math.max(Math.abs((p >>> 24) - ta), Math.abs(((p >> 16) & 0xFF) - tr)),
+                Math.max(Math.abs(((p >> 8) & 0xFF) - tg), Math.abs((p & 0xFF) - tb)));
+            int match = (d <= tolerance) ? 1 : 0;
+            mask[maskOffset + i] = (byte) match;
+            count += match;
+        }
+        return count;
+    }
+
+    /**
+     * Writes one mask byte (0 or 1) per lane and returns the number of set lanes.
+     */
+    private static int writeMask(VectorMask<Integer> match, byte[] mask, int maskOffset) {
+        long bits = match.toLong();
+        for (int lane = 0; lane < INTS.length(); lane++) {
+            mask[maskOffset + lane] = (byte) ((bits >>> lane) & 1);
+        }
+        return Long.bitCount(bits);
+    }
+}
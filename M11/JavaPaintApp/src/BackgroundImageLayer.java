@@ -0,0 +1,359 @@
+/**
+ * Reference image layer rendered beneath the drawing content.
+ * Only the visible part of the source file is decoded, at the current zoom, using
+ * ImageIO region and subsampling reads. Decoded tiles live in a bounded LRU cache,
+ * so very large TIFF or PNG files never have to be loaded onto the heap in full.
+ */
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BackgroundImageLayer implements ManagedResource {
+    private static final int TILE_SIZE = 256;                       // Tile edge in decoded pixels
+    private static final int OVERVIEW_SIZE = 1024;                  // Longest edge of the placeholder overview
+    private static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final File source;
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int imageWidth;
+    private final int imageHeight;
+
+    // All decoding happens on this thread; ImageReader instances are not thread-safe
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "background-image-decoder");
+        t.setDaemon(true);
+        return t;
+    });
+    private final TileCache cache = new TileCache(DEFAULT_CACHE_BYTES);
+    private final Set<TileKey> pending = ConcurrentHashMap.newKeySet();
+
+    private volatile BufferedImage overview = null;
+    private volatile Rectangle lastVisible = new Rectangle();
+    private volatile int lastSubsampling = 1;
+    private volatile double zoom = 1.0;
+    private volatile boolean disposed = false;
+    private volatile Runnable repaintCallback = () -> {};
+
+    /**
+     * Opens the image header only; pixel data is decoded lazily as tiles become visible.
+     */
+    public BackgroundImageLayer(File source) throws IOException {
+        this.source = source;
+        this.input = ImageIO.createImageInputStream(source);
+        if (input == null) {
+            throw new IOException("Cannot open image file: " + source);
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format: " + source.getName());
+        }
+        this.reader = readers.next();
+        reader.setInput(input, false, true);   // Random access is needed for region reads
+        this.imageWidth = reader.getWidth(0);
+        this.imageHeight = reader.getHeight(0);
+
+        decoder.submit(this::decodeOverview);
+    }
+
+    /**
+     * Paints the tiles intersecting the visible area, scheduling decodes for missing ones.
+     * Missing tiles are covered by the low-resolution overview until they arrive.
+     */
+    public void paint(Graphics2D g2d, Rectangle visible) {
+        if (visible == null || visible.isEmpty()) return;
+
+        int sub = getSubsampling();
+        double tileScreenSize = TILE_SIZE * sub * zoom;
+        lastVisible = new Rectangle(visible);
+        lastSubsampling = sub;
+
+        Rectangle imageOnScreen = getDisplayBounds();
+        Rectangle area = visible.intersection(imageOnScreen);
+        if (area.isEmpty()) return;
+
+        int firstCol = (int) Math.floor(area.x / tileScreenSize);
+        int lastCol = (int) Math.floor((area.x + area.width - 1) / tileScreenSize);
+        int firstRow = (int) Math.floor(area.y / tileScreenSize);
+        int lastRow = (int) Math.floor((area.y + area.height - 1) / tileScreenSize);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                TileKey key = new TileKey(sub, col, row);
+                int dx = (int) Math.floor(col * tileScreenSize);
+                int dy = (int) Math.floor(row * tileScreenSize);
+                int dx2 = (int) Math.min(Math.floor((col + 1) * tileScreenSize), imageOnScreen.width);
+                int dy2 = (int) Math.min(Math.floor((row + 1) * tileScreenSize), imageOnScreen.height);
+
+                BufferedImage tile = cache.get(key);
+                if (tile != null) {
+                    g2d.drawImage(tile, dx, dy, dx2, dy2, 0, 0, tile.getWidth(), tile.getHeight(), null);
+                } else {
+                    paintFromOverview(g2d, dx, dy, dx2, dy2);
+                    requestTile(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Covers a screen rectangle with the matching part of the overview image.
+     */
+    private void paintFromOverview(Graphics2D g2d, int dx, int dy, int dx2, int dy2) {
+        BufferedImage preview = overview;
+        if (preview == null) return;
+
+        double scaleX = preview.getWidth() / (imageWidth * zoom);
+        double scaleY = preview.getHeight() / (imageHeight * zoom);
+        g2d.drawImage(preview, dx, dy, dx2, dy2,
+            (int) (dx * scaleX), (int) (dy * scaleY),
+            (int) Math.ceil(dx2 * scaleX), (int) Math.ceil(dy2 * scaleY), null);
+    }
+
+    private void requestTile(TileKey key) {
+        if (disposed || !pending.add(key)) return;
+        decoder.submit(() -> {
+            try {
+                // Skip tiles that scrolled out of view or belong to a stale zoom level
+                if (disposed || key.subsampling != lastSubsampling || !isTileVisible(key)) return;
+
+                BufferedImage tile = decodeTile(key);
+                if (tile != null) {
+                    cache.put(key, tile);
+                    repaintCallback.run();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Error decoding background tile " + key + ": " + e.getMessage());
+            } finally {
+                pending.remove(key);
+            }
+        });
+    }
+
+    private boolean isTileVisible(TileKey key) {
+        double tileScreenSize = TILE_SIZE * key.subsampling * zoom;
+        Rectangle tileBounds = new Rectangle(
+            (int) Math.floor(key.col * tileScreenSize), (int) Math.floor(key.row * tileScreenSize),
+            (int) Math.ceil(tileScreenSize), (int) Math.ceil(tileScreenSize));
+        return tileBounds.intersects(lastVisible);
+    }
+
+    /**
+     * Decodes one tile using a source region read combined with subsampling.
+     */
+    private BufferedImage decodeTile(TileKey key) throws IOException {
+        int span = TILE_SIZE * key.subsampling;
+        Rectangle region = new Rectangle(key.col * span, key.row * span, span, span)
+            .intersection(new Rectangle(0, 0, imageWidth, imageHeight));
+        if (region.isEmpty()) return null;
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        param.setSourceSubsampling(key.subsampling, key.subsampling, 0, 0);
+        return reader.read(0, param);
+    }
+
+    /**
+     * Decodes a heavily subsampled version of the whole image as a placeholder.
+     */
+    private void decodeOverview() {
+        if (disposed) return;
+        try {
+            int longest = Math.max(imageWidth, imageHeight);
+            int sub = Math.max(1, (int) Math.ceil(longest / (double) OVERVIEW_SIZE));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(sub, sub, 0, 0);
+            overview = reader.read(0, param);
+            repaintCallback.run();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error decoding background overview: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Subsampling factor that decodes at least as many pixels as are displayed.
+     */
+    private int getSubsampling() {
+        return Math.max(1, (int) Math.floor(1.0 / zoom));
+    }
+
+    /**
+     * Returns the screen area covered by the image at the current zoom.
+     */
+    public Rectangle getDisplayBounds() {
+        return new Rectangle(0, 0,
+            (int) Math.ceil(imageWidth * zoom), (int) Math.ceil(imageHeight * zoom));
+    }
+
+    /**
+     * Picks the largest zoom (up to 1:1) that shows the whole image in the given area.
+     */
+    public void zoomToFit(int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        setZoom(Math.min(1.0, Math.min(width / (double) imageWidth, height / (double) imageHeight)));
+    }
+
+    public void setZoom(double zoom) {
+        this.zoom = Math.max(0.001, Math.min(zoom, 16.0));
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public void setRepaintCallback(Runnable repaintCallback) {
+        this.repaintCallback = (repaintCallback != null) ? repaintCallback : () -> {};
+    }
+
+    public void setCacheLimit(long bytes) {
+        cache.setLimit(bytes);
+    }
+
+    public long getCachedBytes() {
+        return cache.getBytes();
+    }
+
+    @Override
+    public String getResourceName() {
+        return "Background image";
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        BufferedImage preview = overview;
+        long overviewBytes = (preview != null) ? (long) preview.getWidth() * preview.getHeight() * 4 : 0;
+        return cache.getBytes() + overviewBytes;
+    }
+
+    /**
+     * Drops all decoded tiles; visible ones are decoded again on the next paint.
+     */
+    @Override
+    public long evictCaches() {
+        return cache.clear();
+    }
+
+    public File getSource() {
+        return source;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Stops decoding and releases the reader and its file handle.
+     */
+    public void dispose() {
+        disposed = true;
+        decoder.submit(() -> {
+            reader.dispose();
+            try {
+                input.close();
+            } catch (IOException e) {
+                System.out.println("Error closing background image: " + e.getMessage());
+            }
+        });
+        decoder.shutdown();
+    }
+
+    /**
+     * Identifies a decoded tile by zoom level and grid position.
+     */
+    private static final class TileKey {
+        final int subsampling, col, row;
+
+        TileKey(int subsampling, int col, int row) {
+            this.subsampling = subsampling;
+            this.col = col;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) return false;
+            TileKey other = (TileKey) o;
+            return subsampling == other.subsampling && col == other.col && row == other.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return (subsampling * 31 + col) * 31 + row;
+        }
+
+        @Override
+        public String toString() {
+            return "[sub=" + subsampling + ", col=" + col + ", row=" + row + "]";
+        }
+    }
+
+    /**
+     * Byte-bounded tile cache with least-recently-used eviction.
+     */
+    private static final class TileCache {
+        private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+        private long limit;
+        private long bytes = 0;
+
+        TileCache(long limit) {
+            this.limit = limit;
+        }
+
+        synchronized BufferedImage get(TileKey key) {
+            return tiles.get(key);
+        }
+
+        synchronized void put(TileKey key, BufferedImage tile) {
+            BufferedImage previous = tiles.put(key, tile);
+            if (previous != null) bytes -= sizeOf(previous);
+            bytes += sizeOf(tile);
+            evictToLimit();
+        }
+
+        synchronized void setLimit(long limit) {
+            this.limit = Math.max(0, limit);
+            evictToLimit();
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        synchronized long clear() {
+            long freed = bytes;
+            tiles.clear();
+            bytes = 0;
+            return freed;
+        }
+
+        private void evictToLimit() {
+            Iterator<Map.Entry<TileKey, BufferedImage>> it = tiles.entrySet().iterator();
+            while (bytes > limit && it.hasNext()) {
+                bytes -= sizeOf(it.next().getValue());
+                it.remove();
+            }
+        }
+
+        private static long sizeOf(BufferedImage image) {
+            return (long) image.getWidth() * image.getHeight() * 4;
+        }
+    }
+}
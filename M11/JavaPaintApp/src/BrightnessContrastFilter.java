@@ -0,0 +1,40 @@
+/**
+ * Brightness and contrast adjustment through a 256-entry lookup table applied to
+ * each colour channel. Both settings range from -100 to 100; alpha is unchanged.
+ */
+public class BrightnessContrastFilter extends CanvasFilter {
+    private final int brightness;
+    private final int contrast;
+    private final int[] lookup = new int[256];
+
+    public BrightnessContrastFilter(int brightness, int contrast) {
+        this.brightness = Math.max(-100, Math.min(100, brightness));
+        this.contrast = Math.max(-100, Math.min(100, contrast));
+
+        // Standard contrast correction factor, with contrast mapped onto -255..255
+        double c = this.contrast * 2.55;
+        double factor = (259 * (c + 255)) / (255 * (259 - c));
+        double offset = this.brightness * 2.55;
+        for (int v = 0; v < 256; v++) {
+            int adjusted = (int) Math.round(factor * (v - 128) + 128 + offset);
+            lookup[v] = Math.min(255, Math.max(0, adjusted));
+        }
+    }
+
+    @Override
+    protected void filterTile(int[] src, int[] dst, int width, int height, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int end = y * width + x1;
+            for (int i = y * width + x0; i < end; i++) {
+                int p = src[i];
+                dst[i] = (p & 0xFF000000) | (lookup[(p >> 16) & 0xFF] << 16)
+                    | (lookup[(p >> 8) & 0xFF] << 8) | lookup[p & 0xFF];
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Brightness/Contrast";
+    }
+}
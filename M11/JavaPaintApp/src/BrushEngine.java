@@ -0,0 +1,287 @@
+/**
+ * Stamp-based raster brush used by the eraser and by the pencil in raster mode.
+ * Each brush size has a precomputed antialiased coverage mask (a "dab"), kept in a
+ * small size-keyed cache. Strokes stamp the dab at regular spacing along the drag
+ * path, straight into the canvas pixel array, carrying the leftover distance from
+ * one drag event to the next so spacing stays even. On ARGB canvases the stroke
+ * keeps, per tile it touches, the highest coverage each pixel has received and the
+ * pixel's pre-stroke value, and blends the colour once against that, so the
+ * overlapping dabs do not compound a translucent colour into an opaque one. Those
+ * tiles are pooled between strokes, so nothing is allocated per event once warm.
+ * Memory-mapped canvases are stamped a row span at a time through a scratch row.
+ */
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BrushEngine {
+    private static final int MAX_CACHED_MASKS = 32;
+    private static final int SUPERSAMPLE = 4;          // Coverage samples per pixel edge
+    private static final double SPACING_RATIO = 0.25;  // Dab spacing as a fraction of diameter
+    private static final int TILE_SIZE = 64;           // Edge of a stroke coverage tile
+
+    /** How a dab is applied to ARGB canvases; indexed canvases always write the value. */
+    public enum Mode {
+        PAINT,  // Composite a solid colour over the canvas
+        ERASE   // Reduce alpha towards transparency
+    }
+
+    /** Told about each area just before a dab writes to it. */
+    public interface WriteListener {
+        void beforeWrite(int x, int y, int width, int height);
+    }
+
+    private final Map<Integer, DabMask> masks = new LinkedHashMap<Integer, DabMask>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, DabMask> eldest) {
+            return size() > MAX_CACHED_MASKS;
+        }
+    };
+
+    private WriteListener writeListener = null;
+
+    // Current stroke
+    private BufferedImage target = null;
+    private int[] pixels = null;
+    private byte[] indices = null;
+    private MappedCanvas.MappedDataBuffer mapped = null;
+    private int[] scratch = new int[0];
+    private int width, height, stride;
+    private DabMask mask;
+    private Mode mode;
+    private int value;          // ARGB colour, or palette index on an indexed canvas
+    private double spacing;
+    private double lastX, lastY;
+    private double residual;    // Distance travelled since the last dab
+
+    // Coverage the current stroke has laid down so far, indexed by tile over the canvas grid
+    private StrokeTile[] strokeTiles = new StrokeTile[0];
+    private int[] usedTiles = new int[0];      // Indices set in strokeTiles, in order of first use
+    private int usedTileCount = 0;
+    private final ArrayDeque<StrokeTile> tilePool = new ArrayDeque<>();   // At most one per canvas tile
+    private int tilesAcross;
+    private int lastTileKey = -1;
+    private StrokeTile lastTile = null;
+
+    /**
+     * Starts a stroke on the image and stamps the first dab. The value is an ARGB
+     * colour, or a palette index if the image is an indexed canvas.
+     */
+    public void begin(BufferedImage image, int diameter, Mode mode, int value, double x, double y) {
+        this.indices = CanvasPalette.indicesOf(image);
+        this.pixels = (indices == null) ? PixelKernels.pixelsOf(image) : null;
+        this.mapped = (indices == null && pixels == null) ? MappedCanvas.bufferOf(image) : null;
+        if (indices == null && pixels == null && mapped == null) {
+            end();
+            return;
+        }
+        this.target = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.stride = (mapped != null) ? MappedCanvas.strideOf(image) : width;
+        this.mode = mode;
+        this.value = value;
+
+        // Indexed canvases cannot hold blended edge colours, so they get a hard-edged dab
+        int size = Math.max(1, diameter);
+        this.mask = getMask(size, indices != null);
+        this.spacing = Math.max(1.0, size * SPACING_RATIO);
+        if (mapped != null && scratch.length < mask.side) {
+            scratch = new int[mask.side];
+        }
+        releaseStrokeTiles();
+        this.tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tileCount = tilesAcross * ((height + TILE_SIZE - 1) / TILE_SIZE);
+        if (strokeTiles.length != tileCount) {
+            strokeTiles = new StrokeTile[tileCount];
+            usedTiles = new int[tileCount];
+        }
+        while (tilePool.size() > tileCount) {
+            tilePool.pop();
+        }
+
+        lastX = x;
+        lastY = y;
+        residual = 0;
+        stamp(x, y);
+    }
+
+    /**
+     * Continues the stroke to the given point, stamping a dab every spacing pixels.
+     */
+    public void strokeTo(double x, double y) {
+        if (target == null) return;
+
+        double dx = x - lastX;
+        double dy = y - lastY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance == 0) return;
+
+        double t = spacing - residual;
+        while (t <= distance) {
+            stamp(lastX + dx * t / distance, lastY + dy * t / distance);
+            t += spacing;
+        }
+        residual = distance - (t - spacing);
+        lastX = x;
+        lastY = y;
+    }
+
+    public void end() {
+        target = null;
+        pixels = null;
+        indices = null;
+        mapped = null;
+        releaseStrokeTiles();
+    }
+
+    /**
+     * Returns true if a stroke is in progress on this exact image. The canvas image
+     * is replaced on resize or colour-mode changes, which ends the old stroke.
+     */
+    public boolean isActiveOn(BufferedImage image) {
+        return target != null && target == image;
+    }
+
+    /**
+     * Applies the dab centred on the pixel containing (x, y), clipped to the image.
+     */
+    private void stamp(double x, double y) {
+        int originX = (int) Math.floor(x) - mask.half;
+        int originY = (int) Math.floor(y) - mask.half;
+        int x0 = Math.max(0, originX), x1 = Math.min(width, originX + mask.side);
+        int y0 = Math.max(0, originY), y1 = Math.min(height, originY + mask.side);
+        if (x0 >= x1 || y0 >= y1) return;
+        if (writeListener != null) writeListener.beforeWrite(x0, y0, x1 - x0, y1 - y0);
+
+        int length = x1 - x0;
+        for (int row = y0; row < y1; row++) {
+            int maskOffset = (row - originY) * mask.side + (x0 - originX);
+            int offset = row * stride + x0;
+            if (indices != null) {
+                PixelKernels.fillMasked(indices, offset, length, (byte) value, mask.coverage, maskOffset);
+            } else if (mapped != null) {
+                mapped.read(offset, scratch, 0, length);
+                applyToArgb(scratch, 0, x0, row, length, maskOffset);
+                mapped.write(offset, scratch, 0, length);
+            } else {
+                applyToArgb(pixels, offset, x0, row, length, maskOffset);
+            }
+        }
+    }
+
+    /**
+     * Applies one dab row to the canvas span starting at (x, row), split at stroke
+     * tile boundaries.
+     */
+    private void applyToArgb(int[] dst, int offset, int x, int row, int length, int maskOffset) {
+        int end = x + length;
+        while (x < end) {
+            int tileX = x / TILE_SIZE;
+            int run = Math.min(end, (tileX + 1) * TILE_SIZE) - x;
+            StrokeTile tile = strokeTile(tileX, row / TILE_SIZE);
+            int tileOffset = (row % TILE_SIZE) * TILE_SIZE + (x % TILE_SIZE);
+            if (mode == Mode.ERASE) {
+                PixelKernels.eraseAlphaOnce(dst, offset, run, mask.coverage, maskOffset,
+                    tile.coverage, tile.before, tileOffset);
+            } else {
+                PixelKernels.blendColorOnce(dst, offset, run, value, mask.coverage, maskOffset,
+                    tile.coverage, tile.before, tileOffset);
+            }
+            x += run;
+            offset += run;
+            maskOffset += run;
+        }
+    }
+
+    private StrokeTile strokeTile(int tileX, int tileY) {
+        int key = tileY * tilesAcross + tileX;
+        if (key == lastTileKey) return lastTile;   // Consecutive dab rows mostly share a tile
+        StrokeTile tile = strokeTiles[key];
+        if (tile == null) {
+            tile = tilePool.isEmpty() ? new StrokeTile() : tilePool.pop();
+            strokeTiles[key] = tile;
+            usedTiles[usedTileCount++] = key;
+        }
+        lastTileKey = key;
+        lastTile = tile;
+        return tile;
+    }
+
+    /**
+     * Clears the stroke's coverage and returns its tiles to the pool. The pool can
+     * hold every tile of the canvas, so even a stroke across all of it is reused.
+     */
+    private void releaseStrokeTiles() {
+        for (int i = 0; i < usedTileCount; i++) {
+            StrokeTile tile = strokeTiles[usedTiles[i]];
+            strokeTiles[usedTiles[i]] = null;
+            Arrays.fill(tile.coverage, (byte) 0);
+            tilePool.push(tile);
+        }
+        usedTileCount = 0;
+        lastTileKey = -1;
+        lastTile = null;
+    }
+
+    public void setWriteListener(WriteListener writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    private DabMask getMask(int diameter, boolean hard) {
+        Integer key = diameter * 2 + (hard ? 1 : 0);
+        DabMask cached = masks.get(key);
+        if (cached == null) {
+            cached = new DabMask(diameter, hard);
+            masks.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Coverage and pre-stroke pixels of one square tile of the canvas. before is only
+     * meaningful where coverage is non-zero.
+     */
+    private static final class StrokeTile {
+        final byte[] coverage = new byte[TILE_SIZE * TILE_SIZE];
+        final int[] before = new int[TILE_SIZE * TILE_SIZE];
+    }
+
+    /**
+     * Square coverage mask of a round tip, centred on the middle pixel.
+     * New tip shapes only need a different inside test here.
+     */
+    private static final class DabMask {
+        final int half;
+        final int side;
+        final byte[] coverage;
+
+        DabMask(int diameter, boolean hard) {
+            double radius = diameter / 2.0;
+            half = (int) Math.ceil(radius);
+            side = half * 2 + 1;
+            coverage = new byte[side * side];
+
+            double center = half + 0.5;
+            double radiusSq = radius * radius;
+            int samples = SUPERSAMPLE * SUPERSAMPLE;
+            for (int py = 0; py < side; py++) {
+                for (int px = 0; px < side; px++) {
+                    int inside = 0;
+                    for (int sy = 0; sy < SUPERSAMPLE; sy++) {
+                        double dy = py + (sy + 0.5) / SUPERSAMPLE - center;
+                        for (int sx = 0; sx < SUPERSAMPLE; sx++) {
+                            double dx = px + (sx + 0.5) / SUPERSAMPLE - center;
+                            if (dx * dx + dy * dy <= radiusSq) inside++;
+                        }
+                    }
+                    int alpha = (inside * 255 + samples / 2) / samples;
+                    if (hard) alpha = (alpha >= 128) ? 255 : 0;
+                    coverage[py * side + px] = (byte) alpha;
+                }
+            }
+        }
+    }
+}
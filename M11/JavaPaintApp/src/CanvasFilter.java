@@ -0,0 +1,87 @@
+/**
+ * Base class for raster filters over packed int ARGB canvases.
+ * A filter reads from one pixel array and writes the filtered region into another,
+ * tile by tile. Tiles are independent, so they are spread over a ForkJoin pool and
+ * scale with the number of cores.
+ */
+import java.awt.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public abstract class CanvasFilter {
+    private static final int TILE_SIZE = 128;
+
+    /**
+     * Filters the region of src into the same region of dst, which must be a
+     * different array of the same size. Pixels outside the region are not written.
+     */
+    public final void apply(int[] src, int[] dst, int width, int height, Rectangle region, ForkJoinPool pool) {
+        Rectangle area = region.intersection(new Rectangle(0, 0, width, height));
+        if (area.isEmpty()) return;
+
+        int cols = (area.width + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (area.height + TILE_SIZE - 1) / TILE_SIZE;
+        pool.invoke(new TileRange(src, dst, width, height, area, cols, 0, cols * rows));
+    }
+
+    /**
+     * Filters one tile. Pixels outside the tile may be read, but only the tile is written.
+     */
+    protected abstract void filterTile(int[] src, int[] dst, int width, int height,
+                                       int x0, int y0, int x1, int y1);
+
+    /**
+     * Returns the equivalent filter for an image scaled by the given factor, used to
+     * preview at low resolution. Filters without a spatial extent return themselves.
+     */
+    public CanvasFilter scaled(double factor) {
+        return this;
+    }
+
+    /**
+     * How far outside the written area a filter reads, in pixels.
+     */
+    public int getReach() {
+        return 0;
+    }
+
+    public abstract String getName();
+
+    /**
+     * Splits a run of tiles in half until a single tile is left.
+     */
+    private final class TileRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] src, dst;
+        private final int width, height;
+        private final Rectangle area;
+        private final int cols, from, to;
+
+        TileRange(int[] src, int[] dst, int width, int height, Rectangle area, int cols, int from, int to) {
+            this.src = src;
+            this.dst = dst;
+            this.width = width;
+            this.height = height;
+            this.area = area;
+            this.cols = cols;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileRange(src, dst, width, height, area, cols, from, mid),
+                    new TileRange(src, dst, width, height, area, cols, mid, to));
+                return;
+            }
+            int x0 = area.x + (from % cols) * TILE_SIZE;
+            int y0 = area.y + (from / cols) * TILE_SIZE;
+            int x1 = Math.min(x0 + TILE_SIZE, area.x + area.width);
+            int y1 = Math.min(y0 + TILE_SIZE, area.y + area.height);
+            filterTile(src, dst, width, height, x0, y0, x1, y1);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Growable colour palette for the 8-bit indexed canvas.
+ * Starts with transparent, white and the toolbar colours, and adds entries as new
+ * colours are used, up to 256. Growing only swaps the IndexColorModel; the pixel
+ * indices already on the canvas stay valid, so no pixels are copied.
+ */
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.HashMap;
+
+public class CanvasPalette {
+    /** Fixed colours offered by the toolbar palette. */
+    public static final Color[] DEFAULT_COLORS = {
+            Color.BLACK, Color.DARK_GRAY, Color.GRAY, Color.LIGHT_GRAY, Color.WHITE,
+            Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW, Color.MAGENTA,
+            Color.CYAN, Color.ORANGE, Color.PINK, new Color(128, 0, 128), new Color(139, 69, 19)
+    };
+
+    public static final int TRANSPARENT_INDEX = 0;
+    public static final int MAX_ENTRIES = 256;
+
+    private final int[] entries = new int[MAX_ENTRIES];
+    private final HashMap<Integer, Integer> lookup = new HashMap<>();
+    private int count = 0;
+    private IndexColorModel colorModel = null;  // Rebuilt lazily after growth
+
+    public CanvasPalette() {
+        add(0x00000000);
+        add(Color.WHITE.getRGB());
+        for (Color color : DEFAULT_COLORS) {
+            add(color.getRGB());
+        }
+    }
+
+    /**
+     * Returns the index of the colour, or -1 if it is not in the palette.
+     */
+    public int indexOf(int argb) {
+        Integer index = lookup.get(normalize(argb));
+        return (index != null) ? index : -1;
+    }
+
+    /**
+     * Returns the index of the colour, adding it if needed.
+     * Returns -1 when the palette is full and the colour is missing.
+     */
+    public int ensure(int argb) {
+        int index = indexOf(argb);
+        if (index >= 0) return index;
+        if (count == MAX_ENTRIES) return -1;
+        return add(argb);
+    }
+
+    private int add(int argb) {
+        argb = normalize(argb);
+        Integer existing = lookup.get(argb);
+        if (existing != null) return existing;
+
+        entries[count] = argb;
+        lookup.put(argb, count);
+        colorModel = null;
+        return count++;
+    }
+
+    public IndexColorModel getColorModel() {
+        if (colorModel == null) {
+            colorModel = new IndexColorModel(8, count, entries, 0, true, TRANSPARENT_INDEX, DataBuffer.TYPE_BYTE);
+        }
+        return colorModel;
+    }
+
+    /**
+     * Creates a blank 8-bit canvas filled with the given palette index.
+     */
+    public BufferedImage createImage(int w, int h, int backgroundIndex) {
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, getColorModel());
+        byte[] indices = indicesOf(image);
+        PixelKernels.fill(indices, 0, indices.length, (byte) backgroundIndex);
+        return image;
+    }
+
+    /**
+     * Re-attaches the image's pixels to the current, possibly grown, colour model.
+     */
+    public BufferedImage rewrap(BufferedImage image) {
+        if (image.getColorModel() == getColorModel()) return image;
+        return new BufferedImage(getColorModel(), image.getRaster(), false, null);
+    }
+
+    /**
+     * Promotes an indexed canvas to ARGB, expanding indices through the palette.
+     */
+    public BufferedImage toArgb(BufferedImage indexed) {
+        int[] lut = new int[MAX_ENTRIES];
+        System.arraycopy(entries, 0, lut, 0, count);
+
+        BufferedImage argb = new BufferedImage(indexed.getWidth(), indexed.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        byte[] src = indicesOf(indexed);
+        PixelKernels.expandIndexed(src, 0, lut, PixelKernels.pixelsOf(argb), 0, src.length);
+        return argb;
+    }
+
+    /**
+     * Converts an ARGB canvas to indices, growing the palette as needed.
+     * Returns null if the image uses more colours than the palette can hold.
+     */
+    public BufferedImage fromArgb(BufferedImage argb) {
+        int w = argb.getWidth(), h = argb.getHeight();
+        int[] pixels = PixelKernels.pixelsOf(argb);
+        int[] row = (pixels == null) ? new int[w] : null;   // Disk-backed canvases are read by row
+        byte[] converted = new byte[w * h];
+        int lastColor = 0, lastIndex = TRANSPARENT_INDEX;   // Runs of one colour are common
+        for (int y = 0; y < h; y++) {
+            int[] src = pixels;
+            int offset = y * w;
+            if (pixels == null) {
+                argb.getRaster().getDataElements(0, y, w, 1, row);
+                src = row;
+                offset = 0;
+            }
+            for (int x = 0; x < w; x++) {
+                int color = src[offset + x];
+                if (color != lastColor) {
+                    lastIndex = ensure(color);
+                    if (lastIndex < 0) return null;
+                    lastColor = color;
+                }
+                converted[y * w + x] = (byte) lastIndex;
+            }
+        }
+
+        BufferedImage indexed = new BufferedImage(argb.getWidth(), argb.getHeight(),
+            BufferedImage.TYPE_BYTE_INDEXED, getColorModel());
+        System.arraycopy(converted, 0, indicesOf(indexed), 0, converted.length);
+        return indexed;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the backing index array of an 8-bit indexed image, or null.
+     */
+    public static byte[] indicesOf(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_INDEXED
+                && image.getRaster().getDataBuffer() instanceof DataBufferByte
+                && image.getRaster().getParent() == null) {
+            return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        }
+        return null;
+    }
+
+    /**
+     * Fully transparent colours are all treated as the transparent entry.
+     */
+    private static int normalize(int argb) {
+        return ((argb >>> 24) == 0) ? 0 : argb;
+    }
+}
@@ -2,8 +2,11 @@
  * Enhanced DrawingElement.java - Base class with stroke width support
  */
 import java.awt.*;
+import java.io.Serializable;
 
-public abstract class DrawingElement {
+public abstract class DrawingElement implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
     protected Color strokeColor;
     protected int strokeWidth;  // New: variable stroke width support
     
@@ -19,6 +22,45 @@ public abstract class DrawingElement {
     
     public abstract void draw(Graphics2D g2d);
     
+    /**
+     * Draws a simplified version for interactive frames. Defaults to the full drawing.
+     */
+    public void drawDraft(Graphics2D g2d) {
+        draw(g2d);
+    }
+    
+    /**
+     * Draws the element's footprint in one flat color, ignoring its own colors.
+     * Used by the picking buffer, where the color encodes the element's index.
+     */
+    public abstract void drawSilhouette(Graphics2D g2d, Color color);
+    
+    /**
+     * Returns the area touched when the element is drawn, including stroke width.
+     */
+    public abstract Rectangle getPaintBounds();
+    
+    /**
+     * Returns a copy of the element moved by the given offset. Elements are never
+     * moved in place, since other threads may be reading them from a snapshot.
+     */
+    public abstract DrawingElement translated(int dx, int dy);
+    
+    /**
+     * Rough heap footprint of the element, used to decide when history is compacted.
+     */
+    public long estimateMemoryBytes() {
+        return 64;  // Object header, fields and Color reference
+    }
+    
+    /**
+     * Pads geometric bounds by half the stroke width plus a pixel for antialiasing.
+     */
+    protected Rectangle padForStroke(Rectangle bounds) {
+        int pad = strokeWidth / 2 + 2;
+        return new Rectangle(bounds.x - pad, bounds.y - pad, bounds.width + pad * 2, bounds.height + pad * 2);
+    }
+    
     public Color getStrokeColor() {
         return strokeColor;
     }
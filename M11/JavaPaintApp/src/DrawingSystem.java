@@ -1,57 +1,438 @@
 /**
  * Manages chronological timeline of drawing elements for proper layering.
  * Ensures drawings appear in creation order rather than type-based order.
+ * Mutations happen on the EDT; other threads read through snapshot().
+ * Every mutation bumps a version number, so rasters derived from the scene can
+ * tell whether they only need to draw newly appended elements or a full rebuild.
  */
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-public class DrawingSystem {
-    private ArrayList<DrawingElement> elements = new ArrayList<>();
+public class DrawingSystem implements ManagedResource {
+    // Compaction defaults: bake the oldest history once either limit is passed
+    private static final int DEFAULT_MAX_LIVE_ELEMENTS = 5000;
+    private static final long DEFAULT_MAX_LIVE_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_BASE_DIMENSION = 16384;
+    private static final int BASE_MARGIN = 256;   // Baked pixels kept beyond the largest view
+    
+    private final ElementStore elements = new ElementStore();
+    private long liveBytes = 0;
+    
+    // Flattened history: pixels in bakedBase, vector data in the on-disk archive
+    private SwappableRaster bakedBase = null;
+    private Rectangle bakedBounds = null;
+    private int extentWidth = 0, extentHeight = 0;   // Largest view the scene has been shown in
+    private ElementArchive archive = new ElementArchive();
+    // Elements whose pixels now live in a raster canvas; kept only for the timeline
+    private ElementArchive flattened = new ElementArchive();
+    private int maxLiveElements = DEFAULT_MAX_LIVE_ELEMENTS;
+    private long maxLiveBytes = DEFAULT_MAX_LIVE_BYTES;
+    
+    private long version = 0;
+    private long rewriteVersion = 0;   // Last mutation other than an append
     
     public void addElement(DrawingElement element) {
         if (element != null) {
             elements.add(element);
+            liveBytes += element.estimateMemoryBytes();
+            version++;
         }
     }
     
     public void renderAll(Graphics2D g2d, int width, int height) {
         g2d.setColor(Color.WHITE);
         g2d.fillRect(0, 0, width, height);
+        renderElements(g2d);
+    }
+    
+    /**
+     * Draws all elements in creation order without clearing the background first,
+     * so they can be layered over a reference image.
+     */
+    public void renderElements(Graphics2D g2d) {
+        renderElements(g2d, false);
+    }
+    
+    /**
+     * Renders elements, using each element's simplified draft drawing when requested.
+     */
+    public void renderElements(Graphics2D g2d, boolean draft) {
+        BufferedImage base = bakedBaseImage();
+        if (base != null) {
+            g2d.drawImage(base, 0, 0, null);
+        }
         
-        for (DrawingElement element : elements) {
-            element.draw(g2d);
+        Rectangle clip = g2d.getClipBounds();
+        for (DrawingElement element : elements.snapshot()) {
+            // Skip elements outside a partial repaint region
+            if (clip != null && !clip.intersects(element.getPaintBounds())) continue;
+            if (draft) {
+                element.drawDraft(g2d);
+            } else {
+                element.draw(g2d);
+            }
         }
     }
     
     public void clear() {
         elements.clear();
+        liveBytes = 0;
+        discardBakedBase();
+        archive.clear();
+        flattened.clear();
+        markRewritten();
+    }
+    
+    /**
+     * Empties the scene once it has been drawn into a raster canvas. The elements,
+     * including baked ones, are no longer rendered or picked, but stay in the
+     * timeline so timelapse playback and export still cover them.
+     */
+    public void flattenIntoTimeline() {
+        try {
+            flattened.append(archive.loadAll());
+            flattened.append(new ArrayList<>(elements.snapshot()));
+        } catch (IOException e) {
+            System.out.println("Error saving drawing history for the timelapse: " + e.getMessage());
+        }
+        elements.clear();
+        liveBytes = 0;
+        discardBakedBase();
+        archive.clear();
+        markRewritten();
+    }
+    
+    /**
+     * Adds an element that was drawn straight into a raster canvas to the timeline
+     * only; it is never part of the rendered scene.
+     */
+    public void recordFlattened(DrawingElement element) {
+        try {
+            flattened.append(Collections.singletonList(element));
+        } catch (IOException e) {
+            System.out.println("Error saving drawing history for the timelapse: " + e.getMessage());
+        }
     }
     
     public boolean isEmpty() {
-        return elements.isEmpty();
+        return elements.isEmpty() && bakedBase == null;
     }
     
     public int size() {
         return elements.size();
     }
     
+    public DrawingElement getElement(int index) {
+        return elements.get(index);
+    }
+    
+    /**
+     * Returns a read-only view of the live elements. The view is an O(1) snapshot
+     * that stays consistent while the EDT keeps drawing, so exporters, autosave or
+     * render threads can iterate it without copying or locking. Elements are never
+     * edited in place; edits go through replaceElement, which leaves the snapshot alone.
+     */
     public List<DrawingElement> getElements() {
-        return new ArrayList<>(elements);
+        return elements.snapshot();
+    }
+    
+    public ElementStore.Snapshot snapshot() {
+        return elements.snapshot();
     }
     
     public DrawingElement removeLastElement() {
-        if (!elements.isEmpty()) {
-            return elements.remove(elements.size() - 1);
+        if (elements.isEmpty() && !archive.isEmpty()) {
+            // Deep undo reaches into baked history
+            restoreArchivedElements();
+        }
+        DrawingElement removed = elements.removeLast();
+        if (removed != null) {
+            liveBytes -= removed.estimateMemoryBytes();
+            markRewritten();
+        }
+        return removed;
+    }
+    
+    /**
+     * Bakes the oldest elements into the base image once the live element count or
+     * estimated memory passes its threshold. Their vector data moves to the on-disk
+     * archive. The base only covers the largest view seen so far plus a small margin.
+     * Returns true if elements were compacted, which shifts element indices.
+     */
+    public boolean compactIfNeeded(int viewWidth, int viewHeight) {
+        ensureBaseCovers(viewWidth, viewHeight);
+        if (elements.size() <= maxLiveElements && liveBytes <= maxLiveBytes) return false;
+        
+        // Keep the newest half of the allowed working set live
+        int keep = Math.min(elements.size(), maxLiveElements / 2);
+        long keepBytes = 0;
+        int firstKept = elements.size();
+        while (firstKept > elements.size() - keep && keepBytes < maxLiveBytes / 2) {
+            firstKept--;
+            keepBytes += elements.get(firstKept).estimateMemoryBytes();
+        }
+        if (firstKept == 0) return false;
+        
+        List<DrawingElement> oldest = new ArrayList<>(elements.snapshot().subList(0, firstKept));
+        try {
+            archive.append(oldest);
+        } catch (IOException e) {
+            // Without an archive the vector data would be lost, so keep everything live
+            System.out.println("Error archiving drawing history: " + e.getMessage());
+            return false;
+        }
+        
+        bakeIntoBase(oldest);
+        elements.removeFirst(firstKept);
+        liveBytes = keepBytes;
+        markRewritten();  // Indices shift
+        return true;
+    }
+    
+    /**
+     * Records the size the scene is shown at. The baked base is sized from the
+     * largest view seen, so shrinking the window never crops it; if the view grows
+     * past that, baked content that was left out is re-baked from the archive.
+     */
+    public void ensureBaseCovers(int viewWidth, int viewHeight) {
+        if (viewWidth <= extentWidth && viewHeight <= extentHeight) return;
+        extentWidth = Math.max(extentWidth, viewWidth);
+        extentHeight = Math.max(extentHeight, viewHeight);
+        if (bakedBase == null) return;
+        
+        int w = baseWidthFor(bakedBounds), h = baseHeightFor(bakedBounds);
+        if (w > bakedBase.getWidth() || h > bakedBase.getHeight()) {
+            rebakeFromArchive(Math.max(w, bakedBase.getWidth()), Math.max(h, bakedBase.getHeight()));
+        }
+    }
+    
+    /**
+     * Draws elements onto the base image, growing it to fit their bounds within the
+     * largest view plus a margin. A stroke dragged far off-canvas would otherwise
+     * size the base for all of it.
+     */
+    private void bakeIntoBase(List<DrawingElement> chunk) {
+        Rectangle bounds = (bakedBounds != null) ? new Rectangle(bakedBounds) : null;
+        for (DrawingElement element : chunk) {
+            Rectangle b = element.getPaintBounds();
+            bounds = (bounds == null) ? b : bounds.union(b);
+        }
+        if (bounds == null) return;
+        bakedBounds = bounds;
+        int w = baseWidthFor(bounds);
+        int h = baseHeightFor(bounds);
+        
+        BufferedImage base = null;
+        if (bakedBase != null) {
+            try {
+                base = bakedBase.get();
+            } catch (IOException e) {
+                // The archive already holds this chunk, so re-baking it covers everything
+                System.out.println("Error restoring baked history, re-baking it: " + e.getMessage());
+                rebakeFromArchive(Math.max(w, bakedBase.getWidth()), Math.max(h, bakedBase.getHeight()));
+                return;
+            }
+        }
+        if (base == null || base.getWidth() < w || base.getHeight() < h) {
+            int newW = Math.max(w, base != null ? base.getWidth() : 0);
+            int newH = Math.max(h, base != null ? base.getHeight() : 0);
+            BufferedImage grown = new BufferedImage(newW, newH, BufferedImage.TYPE_INT_ARGB);
+            if (base != null) {
+                Graphics2D g2 = grown.createGraphics();
+                g2.drawImage(base, 0, 0, null);
+                g2.dispose();
+                bakedBase.dispose();
+            }
+            bakedBase = new SwappableRaster(grown);
+            base = grown;
+        }
+        
+        Graphics2D g2 = base.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (DrawingElement element : chunk) {
+            element.draw(g2);
+        }
+        g2.dispose();
+    }
+    
+    /**
+     * Base image size needed for baked content with the given bounds. The base is
+     * anchored at the origin; content at negative coordinates or past the margin
+     * stays archive-only until the view grows.
+     */
+    private int baseWidthFor(Rectangle bounds) {
+        int limit = Math.min(Math.max(extentWidth, 1) + BASE_MARGIN, MAX_BASE_DIMENSION);
+        return Math.min(Math.max(bounds.x + bounds.width, 1), limit);
+    }
+    
+    private int baseHeightFor(Rectangle bounds) {
+        int limit = Math.min(Math.max(extentHeight, 1) + BASE_MARGIN, MAX_BASE_DIMENSION);
+        return Math.min(Math.max(bounds.y + bounds.height, 1), limit);
+    }
+    
+    /**
+     * Returns the baked base image, or null if there is none. If its compressed or
+     * spilled pixels cannot be read back it is re-baked from the archive, which holds
+     * the same elements; null is returned if that fails too.
+     */
+    private BufferedImage bakedBaseImage() {
+        if (bakedBase == null) return null;
+        try {
+            return bakedBase.get();
+        } catch (IOException e) {
+            System.out.println("Error restoring baked history, re-baking it: " + e.getMessage());
+            return rebakeFromArchive(bakedBase.getWidth(), bakedBase.getHeight());
+        }
+    }
+    
+    /**
+     * Redraws the whole archive into a new base of the given size and returns it.
+     * The old base is kept, and null returned, if the archive cannot be read.
+     */
+    private BufferedImage rebakeFromArchive(int width, int height) {
+        List<DrawingElement> archived;
+        try {
+            archived = archive.loadAll();
+        } catch (IOException e) {
+            System.out.println("Error reading drawing history archive: " + e.getMessage());
+            return null;
+        }
+        BufferedImage base = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = base.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (DrawingElement element : archived) {
+            element.draw(g2);
+        }
+        g2.dispose();
+        bakedBase.dispose();
+        bakedBase = new SwappableRaster(base);
+        markRewritten();   // Rasters derived from the scene must pick up the new base
+        return base;
+    }
+    
+    /**
+     * Moves all archived elements back into the live list and drops the base image.
+     * Returns false if the archive could not be read, in which case nothing changes.
+     */
+    public boolean restoreArchivedElements() {
+        if (archive.isEmpty()) return true;
+        
+        List<DrawingElement> archived;
+        try {
+            archived = archive.loadAll();
+        } catch (IOException e) {
+            System.out.println("Error reading drawing history archive: " + e.getMessage());
+            return false;
         }
-        return null;
+        
+        for (DrawingElement element : archived) {
+            liveBytes += element.estimateMemoryBytes();
+        }
+        archived.addAll(elements.snapshot());
+        elements.replaceAll(archived);
+        discardBakedBase();
+        archive.clear();
+        markRewritten();
+        return true;
+    }
+    
+    /**
+     * Returns the complete history in creation order, including archived and
+     * flattened elements, for export. Those are read from disk and not kept live.
+     */
+    public List<DrawingElement> getTimeline() throws IOException {
+        List<DrawingElement> timeline = flattened.loadAll();
+        timeline.addAll(archive.loadAll());
+        timeline.addAll(elements.snapshot());
+        return timeline;
+    }
+    
+    /**
+     * Swaps the live element at index for an edited copy, such as a moved one.
+     * Snapshots taken earlier keep the old element. Bumps the version by exactly one.
+     */
+    public void replaceElement(int index, DrawingElement element) {
+        DrawingElement old = elements.set(index, element);
+        liveBytes += element.estimateMemoryBytes() - old.estimateMemoryBytes();
+        markRewritten();
+    }
+    
+    private void markRewritten() {
+        version++;
+        rewriteVersion = version;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Returns true if elements have only been appended since the given version, so
+     * a raster synced at that version can catch up by drawing just the new ones.
+     */
+    public boolean isAppendOnlySince(long syncedVersion) {
+        return syncedVersion >= rewriteVersion;
+    }
+    
+    private void discardBakedBase() {
+        if (bakedBase != null) {
+            bakedBase.dispose();
+            bakedBase = null;
+        }
+        bakedBounds = null;
+    }
+    
+    @Override
+    public String getResourceName() {
+        return "Drawing history";
+    }
+    
+    @Override
+    public long getEstimatedBytes() {
+        return liveBytes + (bakedBase != null ? bakedBase.getHeapBytes() : 0);
+    }
+    
+    @Override
+    public long getDiskBytes() {
+        return archive.getFileBytes() + flattened.getFileBytes() + (bakedBase != null ? bakedBase.getDiskBytes() : 0);
+    }
+    
+    @Override
+    public long compressIdle(long idleMillis) {
+        return (bakedBase != null) ? bakedBase.compressIfIdle(idleMillis) : 0;
+    }
+    
+    @Override
+    public long spillToDisk() {
+        return (bakedBase != null) ? bakedBase.spill() : 0;
+    }
+    
+    public void setCompactionThresholds(int maxLiveElements, long maxLiveBytes) {
+        this.maxLiveElements = Math.max(2, maxLiveElements);
+        this.maxLiveBytes = Math.max(1, maxLiveBytes);
+    }
+    
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+    
+    public boolean hasBakedHistory() {
+        return bakedBase != null;
+    }
+    
+    public int getArchivedCount() {
+        return archive.size();
     }
     
     public Rectangle getTotalBounds() {
-        if (elements.isEmpty()) return null;
+        if (elements.isEmpty()) return (bakedBounds != null) ? new Rectangle(bakedBounds) : null;
         
-        Rectangle totalBounds = null;
-        for (DrawingElement element : elements) {
+        Rectangle totalBounds = (bakedBounds != null) ? new Rectangle(bakedBounds) : null;
+        for (DrawingElement element : elements.snapshot()) {
             Rectangle bounds = null;
             
             if (element instanceof ShapeElement) {
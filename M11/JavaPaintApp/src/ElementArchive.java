@@ -0,0 +1,85 @@
+/**
+ * Append-only on-disk store for drawing elements that were baked out of the live scene.
+ * Each compaction writes one compressed, length-prefixed chunk so the vector data can
+ * still be reloaded later for export or deep undo without keeping it on the heap.
+ */
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ElementArchive {
+    private File file = null;       // Created lazily on first append
+    private int elementCount = 0;
+
+    /**
+     * Appends a chunk of elements, preserving their order.
+     */
+    public void append(List<DrawingElement> chunk) throws IOException {
+        if (chunk.isEmpty()) return;
+        if (file == null) {
+            file = File.createTempFile("paint-archive", ".bin");
+            file.deleteOnExit();
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(buffer))) {
+            out.writeObject(new ArrayList<>(chunk));
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+        }
+        elementCount += chunk.size();
+    }
+
+    /**
+     * Reads every archived element back in creation order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<DrawingElement> loadAll() throws IOException {
+        List<DrawingElement> result = new ArrayList<>(elementCount);
+        if (file == null) return result;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            while (in.available() > 0) {
+                byte[] block = new byte[in.readInt()];
+                in.readFully(block);
+                try (ObjectInputStream chunk = new ObjectInputStream(
+                        new GZIPInputStream(new ByteArrayInputStream(block)))) {
+                    result.addAll((List<DrawingElement>) chunk.readObject());
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Corrupt element archive", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the backing file and forgets all archived elements.
+     */
+    public void clear() {
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+        elementCount = 0;
+    }
+
+    public int size() {
+        return elementCount;
+    }
+
+    public boolean isEmpty() {
+        return elementCount == 0;
+    }
+
+    public long getFileBytes() {
+        return (file != null) ? file.length() : 0;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Append-optimised element list for one writer and any number of concurrent readers.
+ * Elements live in fixed-size chunks; every mutation publishes an immutable Snapshot
+ * through a single volatile field, so readers get a consistent O(1) view without
+ * locks or copying while the writer keeps appending.
+ *
+ * All mutating methods must be called from the same thread (the EDT in PaintApp).
+ * Slots that an older snapshot may still see are never overwritten in place: after
+ * a tail removal, the next append copies the affected chunk first.
+ */
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+public class ElementStore {
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile Snapshot current = new Snapshot(new DrawingElement[4][], 0, 0);
+
+    // Writer-only: physical slots below this index may be visible to published snapshots
+    private int sealedEnd = 0;
+
+    /**
+     * Immutable view of the store at one point in time.
+     */
+    public static final class Snapshot extends AbstractList<DrawingElement> implements RandomAccess {
+        private final DrawingElement[][] chunks;
+        private final int offset;   // Physical index of element 0
+        private final int size;
+
+        private Snapshot(DrawingElement[][] chunks, int offset, int size) {
+            this.chunks = chunks;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public DrawingElement get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int physical = offset + index;
+            return chunks[physical >>> CHUNK_BITS][physical & CHUNK_MASK];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Returns the current contents; the view never changes afterwards.
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    public boolean isEmpty() {
+        return current.size == 0;
+    }
+
+    public DrawingElement get(int index) {
+        return current.get(index);
+    }
+
+    public void add(DrawingElement element) {
+        Snapshot s = current;
+        DrawingElement[][] chunks = s.chunks;
+        int physical = s.offset + s.size;
+        int chunkIndex = physical >>> CHUNK_BITS;
+
+        if (physical < sealedEnd) {
+            // The slot was published before a removal; copy its chunk instead of
+            // overwriting what older snapshots can still read. Later chunks are
+            // dropped from the new directory so they are allocated fresh as well.
+            chunks = Arrays.copyOf(chunks, chunkIndex + 1);
+            chunks[chunkIndex] = chunks[chunkIndex].clone();
+            sealedEnd = physical;
+        } else if (chunkIndex >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(chunkIndex + 1, chunks.length * 2));
+        }
+
+        // Unpublished directory entries and slots may be written in place
+        if (chunks[chunkIndex] == null) {
+            chunks[chunkIndex] = new DrawingElement[CHUNK_SIZE];
+        }
+        chunks[chunkIndex][physical & CHUNK_MASK] = element;
+
+        current = new Snapshot(chunks, s.offset, s.size + 1);
+        sealedEnd = Math.max(sealedEnd, physical + 1);
+    }
+
+    /**
+     * Replaces the element at index and returns the old one. A published chunk is
+     * copied first, so older snapshots keep seeing the element they had.
+     */
+    public DrawingElement set(int index, DrawingElement element) {
+        Snapshot s = current;
+        DrawingElement old = s.get(index);
+        int physical = s.offset + index;
+        int chunkIndex = physical >>> CHUNK_BITS;
+        DrawingElement[][] chunks = s.chunks.clone();
+        chunks[chunkIndex] = chunks[chunkIndex].clone();
+        chunks[chunkIndex][physical & CHUNK_MASK] = element;
+        current = new Snapshot(chunks, s.offset, s.size);
+        return old;
+    }
+
+    /**
+     * Removes and returns the newest element, or null if the store is empty.
+     */
+    public DrawingElement removeLast() {
+        Snapshot s = current;
+        if (s.size == 0) return null;
+        DrawingElement last = s.get(s.size - 1);
+        current = new Snapshot(s.chunks, s.offset, s.size - 1);
+        return last;
+    }
+
+    /**
+     * Drops the oldest count elements. Fully consumed chunks are released from the
+     * new directory; readers holding older snapshots keep their own references.
+     */
+    public void removeFirst(int count) {
+        Snapshot s = current;
+        count = Math.min(count, s.size);
+        if (count <= 0) return;
+
+        DrawingElement[][] chunks = s.chunks;
+        int offset = s.offset + count;
+        int droppedChunks = offset >>> CHUNK_BITS;
+        if (droppedChunks > 0) {
+            chunks = Arrays.copyOfRange(chunks, droppedChunks, Math.max(chunks.length, droppedChunks + 1));
+            offset -= droppedChunks << CHUNK_BITS;
+            sealedEnd = Math.max(0, sealedEnd - (droppedChunks << CHUNK_BITS));
+        }
+        current = new Snapshot(chunks, offset, s.size - count);
+    }
+
+    /**
+     * Replaces the whole contents, e.g. when archived history is restored.
+     */
+    public void replaceAll(List<DrawingElement> elements) {
+        int chunkCount = Math.max(4, (elements.size() + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        DrawingElement[][] chunks = new DrawingElement[chunkCount][];
+        for (int i = 0; i < elements.size(); i++) {
+            if (chunks[i >>> CHUNK_BITS] == null) {
+                chunks[i >>> CHUNK_BITS] = new DrawingElement[CHUNK_SIZE];
+            }
+            chunks[i >>> CHUNK_BITS][i & CHUNK_MASK] = elements.get(i);
+        }
+        sealedEnd = elements.size();
+        current = new Snapshot(chunks, 0, elements.size());
+    }
+
+    public void clear() {
+        sealedEnd = 0;
+        current = new Snapshot(new DrawingElement[4][], 0, 0);
+    }
+}
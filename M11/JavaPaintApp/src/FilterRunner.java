@@ -0,0 +1,94 @@
+/**
+ * Runs canvas filters away from the Event Dispatch Thread on a ForkJoin pool sized
+ * to the machine. A low-resolution preview can be computed synchronously for live
+ * feedback, while the full-resolution pass writes into a copy of the canvas that
+ * the caller swaps in once it has finished. Canvases too large to copy are filtered
+ * a region at a time instead.
+ */
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+public class FilterRunner {
+    private static final int PREVIEW_SIZE = 480;   // Longest edge of the preview image
+
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "canvas-filter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Filters a downscaled copy of the source and returns it. The caller draws it
+     * scaled back up to the source size.
+     */
+    public BufferedImage preview(BufferedImage source, CanvasFilter filter, Rectangle region) {
+        int w = source.getWidth(), h = source.getHeight();
+        double scale = Math.min(1.0, PREVIEW_SIZE / (double) Math.max(w, h));
+        int pw = Math.max(1, (int) Math.round(w * scale));
+        int ph = Math.max(1, (int) Math.round(h * scale));
+
+        BufferedImage small = new BufferedImage(pw, ph, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = small.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(source, 0, 0, pw, ph, null);
+        g2.dispose();
+
+        BufferedImage result = new BufferedImage(pw, ph, BufferedImage.TYPE_INT_ARGB);
+        int[] src = PixelKernels.pixelsOf(small);
+        int[] dst = PixelKernels.pixelsOf(result);
+        PixelKernels.copy(src, 0, dst, 0, src.length);
+
+        int x0 = (int) Math.floor(region.x * scale), y0 = (int) Math.floor(region.y * scale);
+        int x1 = (int) Math.ceil((region.x + region.width) * scale);
+        int y1 = (int) Math.ceil((region.y + region.height) * scale);
+        filter.scaled(scale).apply(src, dst, pw, ph, new Rectangle(x0, y0, x1 - x0, y1 - y0), pool);
+        return result;
+    }
+
+    /**
+     * Starts filtering the region of an int ARGB image at full resolution. The source
+     * must not change until the returned future completes with the filtered copy.
+     */
+    public CompletableFuture<BufferedImage> run(BufferedImage source, CanvasFilter filter, Rectangle region) {
+        return CompletableFuture.supplyAsync(() -> {
+            int[] src = PixelKernels.pixelsOf(source);
+            BufferedImage result = new BufferedImage(source.getWidth(), source.getHeight(),
+                BufferedImage.TYPE_INT_ARGB);
+            int[] dst = PixelKernels.pixelsOf(result);
+            PixelKernels.copy(src, 0, dst, 0, src.length);
+            filter.apply(src, dst, source.getWidth(), source.getHeight(), region, pool);
+            return result;
+        }, coordinator);
+    }
+
+    /**
+     * Starts filtering the region of any ARGB image without copying the whole of it,
+     * e.g. a memory-mapped canvas. Only the region plus the filter's reach is read
+     * onto the heap, and the future completes with just the filtered region, for the
+     * caller to write back at the region's location.
+     */
+    public CompletableFuture<BufferedImage> runRegion(BufferedImage source, CanvasFilter filter, Rectangle region) {
+        return CompletableFuture.supplyAsync(() -> {
+            int reach = filter.getReach();
+            Rectangle padded = new Rectangle(region.x - reach, region.y - reach,
+                region.width + 2 * reach, region.height + 2 * reach)
+                .intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+            int[] src = new int[padded.width * padded.height];
+            source.getRaster().getDataElements(padded.x, padded.y, padded.width, padded.height, src);
+            int[] dst = src.clone();
+
+            Rectangle local = new Rectangle(region.x - padded.x, region.y - padded.y, region.width, region.height);
+            filter.apply(src, dst, padded.width, padded.height, local, pool);
+
+            BufferedImage result = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_ARGB);
+            PixelKernels.copyRect(dst, local.y * padded.width + local.x, padded.width,
+                PixelKernels.pixelsOf(result), 0, region.width, region.width, region.height);
+            return result;
+        }, coordinator);
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Scanline flood fill over raw canvas pixels, for both ARGB and palette-index data.
+ * Each span is filled in one kernel call, and one seed is pushed per matching run
+ * on the rows above and below, which keeps the seed stack small. ARGB fills can
+ * take a colour tolerance so antialiased edges are filled as well. An optional
+ * SpanListener is told about each span just before it is filled.
+ */
+import java.util.Arrays;
+
+public final class FloodFill {
+    private FloodFill() {}
+
+    /** Told about each span, one row high, just before it is filled. */
+    public interface SpanListener {
+        void beforeFill(int x, int y, int length);
+    }
+
+    /**
+     * Fills the 4-connected region of pixels equal to the one at (x, y).
+     * Returns false if nothing changed.
+     */
+    public static boolean fill(int[] pixels, int w, int h, int x, int y, int fillColor, SpanListener listener) {
+        int target = pixels[y * w + x];
+        if (target == fillColor) return false;
+
+        SeedStack seeds = new SeedStack();
+        seeds.push(y * w + x);
+        byte[] mask = new byte[w];
+
+        while (!seeds.isEmpty()) {
+            int seed = seeds.pop();
+            if (pixels[seed] != target) continue;
+
+            int row = seed / w;
+            int left = PixelKernels.runStart(pixels, seed, row * w, target);
+            int right = PixelKernels.runEnd(pixels, seed, row * w + w, target);
+            if (listener != null) listener.beforeFill(left - row * w, row, right - left);
+            PixelKernels.fill(pixels, left, right - left, fillColor);
+
+            for (int ny = row - 1; ny <= row + 1; ny += 2) {
+                if (ny < 0 || ny >= h) continue;
+                int spanStart = left + (ny - row) * w;
+                if (PixelKernels.matchExact(pixels, spanStart, right - left, target, mask, 0) > 0) {
+                    seeds.pushRuns(mask, right - left, spanStart);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Like the exact ARGB fill, but spreads into pixels whose channels are all within
+     * tolerance of the one at (x, y). Pixels already in the fill colour count as
+     * boundaries, so the fill never revisits what it has painted.
+     */
+    public static boolean fill(int[] pixels, int w, int h, int x, int y, int fillColor, int tolerance,
+                               SpanListener listener) {
+        if (tolerance <= 0) return fill(pixels, w, h, x, y, fillColor, listener);
+        int target = pixels[y * w + x];
+        if (target == fillColor) return false;
+
+        SeedStack seeds = new SeedStack();
+        seeds.push(y * w + x);
+        byte[] mask = new byte[w];
+
+        while (!seeds.isEmpty()) {
+            int seed = seeds.pop();
+            if (!isFillable(pixels[seed], target, tolerance, fillColor)) continue;
+
+            // Only the span's own pixels are tested, not the whole row
+            int rowStart = (seed / w) * w;
+            int left = seed - rowStart, right = left + 1;
+            while (left > 0 && isFillable(pixels[rowStart + left - 1], target, tolerance, fillColor)) left--;
+            while (right < w && isFillable(pixels[rowStart + right], target, tolerance, fillColor)) right++;
+            if (listener != null) listener.beforeFill(left, seed / w, right - left);
+            PixelKernels.fill(pixels, rowStart + left, right - left, fillColor);
+
+            for (int ny = seed / w - 1; ny <= seed / w + 1; ny += 2) {
+                if (ny < 0 || ny >= h) continue;
+                int spanStart = ny * w + left;
+                if (matchFillable(pixels, spanStart, right - left, target, tolerance, fillColor, mask) > 0) {
+                    seeds.pushRuns(mask, right - left, spanStart);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as the ARGB variant, operating on palette indices.
+     */
+    public static boolean fill(byte[] pixels, int w, int h, int x, int y, byte fillIndex, SpanListener listener) {
+        byte target = pixels[y * w + x];
+        if (target == fillIndex) return false;
+
+        SeedStack seeds = new SeedStack();
+        seeds.push(y * w + x);
+        byte[] mask = new byte[w];
+
+        while (!seeds.isEmpty()) {
+            int seed = seeds.pop();
+            if (pixels[seed] != target) continue;
+
+            int row = seed / w;
+            int left = PixelKernels.runStart(pixels, seed, row * w, target);
+            int right = PixelKernels.runEnd(pixels, seed, row * w + w, target);
+            if (listener != null) listener.beforeFill(left - row * w, row, right - left);
+            PixelKernels.fill(pixels, left, right - left, fillIndex);
+
+            for (int ny = row - 1; ny <= row + 1; ny += 2) {
+                if (ny < 0 || ny >= h) continue;
+                int spanStart = left + (ny - row) * w;
+                if (PixelKernels.matchExact(pixels, spanStart, right - left, target, mask, 0) > 0) {
+                    seeds.pushRuns(mask, right - left, spanStart);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as the ARGB variant, for a memory-mapped canvas with the given row stride.
+     * Each seed's span is found by reading the buffer in place, then filled in a
+     * scratch span and written back, so no full-canvas array is needed. A tolerance of 0 fills
+     * exact matches only.
+     */
+    public static boolean fill(MappedCanvas.MappedDataBuffer pixels, int stride, int w, int h,
+                               int x, int y, int fillColor, int tolerance, SpanListener listener) {
+        int target = pixels.getElem(y * stride + x);
+        if (target == fillColor) return false;
+
+        SeedStack seeds = new SeedStack();
+        seeds.push(y * w + x);
+        int[] span = new int[w];
+        byte[] mask = new byte[w];
+
+        while (!seeds.isEmpty()) {
+            int seed = seeds.pop();
+            int sy = seed / w, sx = seed % w;
+            int rowStart = sy * stride;
+            if (!isFillable(pixels.getElem(rowStart + sx), target, tolerance, fillColor)) continue;
+
+            int left = sx, right = sx + 1;
+            while (left > 0 && isFillable(pixels.getElem(rowStart + left - 1), target, tolerance, fillColor)) left--;
+            while (right < w && isFillable(pixels.getElem(rowStart + right), target, tolerance, fillColor)) right++;
+            if (listener != null) listener.beforeFill(left, sy, right - left);
+            PixelKernels.fill(span, 0, right - left, fillColor);
+            pixels.write(rowStart + left, span, 0, right - left);
+
+            for (int ny = sy - 1; ny <= sy + 1; ny += 2) {
+                if (ny < 0 || ny >= h) continue;
+                pixels.read(ny * stride + left, span, 0, right - left);
+                if (matchFillable(span, 0, right - left, target, tolerance, fillColor, mask) > 0) {
+                    seeds.pushRuns(mask, right - left, ny * w + left);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the pixels a tolerance fill may still paint: close enough to the target
+     * and not already in the fill colour. Returns how many there are.
+     */
+    private static int matchFillable(int[] src, int offset, int length, int target, int tolerance,
+                                     int fillColor, byte[] mask) {
+        int count = PixelKernels.matchTolerance(src, offset, length, target, tolerance, mask, 0);
+        for (int i = 0; i < length; i++) {
+            if (mask[i] != 0 && src[offset + i] == fillColor) {
+                mask[i] = 0;
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Single-pixel form of matchFillable, used to grow a span from its seed.
+     */
+    private static boolean isFillable(int p, int target, int tolerance, int fillColor) {
+        if (p == fillColor) return false;
+        int d = Math.max(Math.max(Math.abs((p >>> 24) - (target >>> 24)),
+                                  Math.abs(((p >> 16) & 0xFF) - ((target >> 16) & 0xFF))),
+                         Math.max(Math.abs(((p >> 8) & 0xFF) - ((target >> 8) & 0xFF)),
+                                  Math.abs((p & 0xFF) - (target & 0xFF))));
+        return d <= tolerance;
+    }
+
+    /**
+     * Growable stack of pixel indices.
+     */
+    private static final class SeedStack {
+        private int[] items = new int[256];
+        private int size = 0;
+
+        void push(int index) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = index;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Pushes the first pixel of every run of set mask entries.
+         */
+        void pushRuns(byte[] mask, int length, int spanStart) {
+            for (int i = 0; i < length; i++) {
+                if (mask[i] != 0 && (i == 0 || mask[i - 1] == 0)) {
+                    push(spanStart + i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Separable Gaussian blur. Each tile runs a horizontal pass over its rows plus a
+ * halo of the kernel reach into a tile-local buffer, then a vertical pass into the
+ * output, so tiles never share intermediate data. Colours are blurred premultiplied
+ * by alpha, which keeps transparent areas from darkening the edges.
+ */
+public class GaussianBlurFilter extends CanvasFilter {
+    private static final int WEIGHT_BITS = 12;  // Kernel weights sum to 1 << WEIGHT_BITS
+    private static final int PASS_BITS = 8;     // Extra precision kept between passes
+
+    private final double radius;
+    private final int[] kernel;
+    private final int reach;
+
+    public GaussianBlurFilter(double radius) {
+        this.radius = Math.max(0, radius);
+        this.kernel = buildKernel(this.radius);
+        this.reach = kernel.length / 2;
+    }
+
+    /**
+     * Fixed-point weights with sigma = radius / 3, so the kernel covers about 3 sigma.
+     */
+    private static int[] buildKernel(double radius) {
+        int reach = (int) Math.ceil(radius);
+        if (reach == 0) return new int[]{1 << WEIGHT_BITS};
+
+        double sigma = radius / 3.0;
+        double[] weights = new double[reach * 2 + 1];
+        double total = 0;
+        for (int i = -reach; i <= reach; i++) {
+            weights[i + reach] = Math.exp(-(i * i) / (2 * sigma * sigma));
+            total += weights[i + reach];
+        }
+
+        int[] kernel = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            kernel[i] = (int) Math.round(weights[i] / total * (1 << WEIGHT_BITS));
+            sum += kernel[i];
+        }
+        kernel[reach] += (1 << WEIGHT_BITS) - sum;   // Rounding error goes to the centre tap
+        return kernel;
+    }
+
+    @Override
+    protected void filterTile(int[] src, int[] dst, int width, int height, int x0, int y0, int x1, int y1) {
+        int tileWidth = x1 - x0;
+        int rowStart = Math.max(0, y0 - reach);
+        int rowEnd = Math.min(height, y1 + reach);
+        int spanStart = Math.max(0, x0 - reach);
+        int spanEnd = Math.min(width, x1 + reach);
+        int spanWidth = spanEnd - spanStart;
+
+        // Premultiplied source row, and the horizontally blurred rows of the tile
+        int[] rowA = new int[spanWidth], rowR = new int[spanWidth], rowG = new int[spanWidth], rowB = new int[spanWidth];
+        int cells = (rowEnd - rowStart) * tileWidth;
+        int[] ha = new int[cells], hr = new int[cells], hg = new int[cells], hb = new int[cells];
+        int passShift = WEIGHT_BITS - PASS_BITS;
+        int passRound = 1 << (passShift - 1);
+
+        for (int row = rowStart; row < rowEnd; row++) {
+            int offset = row * width + spanStart;
+            for (int i = 0; i < spanWidth; i++) {
+                int p = src[offset + i];
+                int a = p >>> 24;
+                rowA[i] = a;
+                rowR[i] = (((p >> 16) & 0xFF) * a + 127) / 255;
+                rowG[i] = (((p >> 8) & 0xFF) * a + 127) / 255;
+                rowB[i] = ((p & 0xFF) * a + 127) / 255;
+            }
+
+            int cell = (row - rowStart) * tileWidth;
+            for (int x = x0; x < x1; x++, cell++) {
+                int sa = 0, sr = 0, sg = 0, sb = 0;
+                for (int k = -reach; k <= reach; k++) {
+                    int i = Math.min(Math.max(x + k, 0), width - 1) - spanStart;
+                    int w = kernel[k + reach];
+                    sa += rowA[i] * w;
+                    sr += rowR[i] * w;
+                    sg += rowG[i] * w;
+                    sb += rowB[i] * w;
+                }
+                ha[cell] = (sa + passRound) >> passShift;
+                hr[cell] = (sr + passRound) >> passShift;
+                hg[cell] = (sg + passRound) >> passShift;
+                hb[cell] = (sb + passRound) >> passShift;
+            }
+        }
+
+        int outShift = WEIGHT_BITS + PASS_BITS;
+        int outRound = 1 << (outShift - 1);
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                long sa = 0, sr = 0, sg = 0, sb = 0;
+                for (int k = -reach; k <= reach; k++) {
+                    int cell = (Math.min(Math.max(y + k, 0), height - 1) - rowStart) * tileWidth + (x - x0);
+                    int w = kernel[k + reach];
+                    sa += (long) ha[cell] * w;
+                    sr += (long) hr[cell] * w;
+                    sg += (long) hg[cell] * w;
+                    sb += (long) hb[cell] * w;
+                }
+
+                int a = (int) ((sa + outRound) >> outShift);
+                int blurred = 0;
+                if (a > 0) {
+                    // Un-premultiply from the full-precision sums
+                    int r = (int) Math.min(255, (sr * 255 + sa / 2) / sa);
+                    int g = (int) Math.min(255, (sg * 255 + sa / 2) / sa);
+                    int b = (int) Math.min(255, (sb * 255 + sa / 2) / sa);
+                    blurred = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+                int index = y * width + x;
+                dst[index] = combine(src[index], blurred);
+            }
+        }
+    }
+
+    /**
+     * Produces the output pixel from the original and its blurred value.
+     */
+    protected int combine(int original, int blurred) {
+        return blurred;
+    }
+
+    protected double getRadius() {
+        return radius;
+    }
+
+    @Override
+    public int getReach() {
+        return reach;
+    }
+
+    @Override
+    public CanvasFilter scaled(double factor) {
+        return new GaussianBlurFilter(radius * factor);
+    }
+
+    @Override
+    public String getName() {
+        return "Gaussian Blur";
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Records a timestamped stream of canvas input to a plain-text trace file so that
+ * real sessions can be replayed deterministically by InputReplayer.
+ *
+ * Each line is "<nanos since start> <EVENT> <args...>", where EVENT is one of
+ * PRESS/DRAG/RELEASE/MOVE x y, TOOL name, COLOR argb, FILL argb, STROKE width,
+ * TOLERANCE value, RESIZE width height, INDEXED on|off, DISK on|off, or one of the
+ * commands CLEAR, COPY, CUT, PASTE, EMOJI and REMOVE_BACKGROUND.
+ *
+ * Commands whose effect a trace cannot reproduce, such as filters or imported
+ * images, end the trace with a NOT_REPLAYABLE comment; nothing after them is
+ * recorded, so the trace still replays faithfully up to that point.
+ */
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+public class InputRecorder {
+    public static final String HEADER = "# PaintApp input trace v1";
+    public static final String NOT_REPLAYABLE = "# Not replayable after this point: ";
+
+    private final Writer out;
+    private final long startNanos = System.nanoTime();
+    private boolean failed = false;
+    private boolean ended = false;   // A command the trace cannot reproduce was recorded
+
+    public InputRecorder(File file) throws IOException {
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        out.write(HEADER);
+        out.write('\n');
+    }
+
+    public void recordMouse(String type, Point point) {
+        write(type + " " + point.x + " " + point.y);
+    }
+
+    public void recordTool(String tool) {
+        write("TOOL " + tool);
+    }
+
+    public void recordColor(Color color) {
+        write("COLOR " + Integer.toHexString(color.getRGB()));
+    }
+
+    public void recordFillColor(Color color) {
+        write("FILL " + Integer.toHexString(color.getRGB()));
+    }
+
+    public void recordStrokeWidth(int width) {
+        write("STROKE " + width);
+    }
+
+    public void recordFillTolerance(int tolerance) {
+        write("TOLERANCE " + tolerance);
+    }
+
+    public void recordResize(int width, int height) {
+        write("RESIZE " + width + " " + height);
+    }
+
+    public void recordIndexedColorMode(boolean enabled) {
+        write("INDEXED " + (enabled ? "on" : "off"));
+    }
+
+    public void recordDiskBackedCanvas(boolean enabled) {
+        write("DISK " + (enabled ? "on" : "off"));
+    }
+
+    /**
+     * Records a command without arguments, e.g. CLEAR or PASTE.
+     */
+    public void recordCommand(String command) {
+        write(command);
+    }
+
+    /**
+     * Ends the trace at a change it cannot reproduce, with the reason as a comment.
+     */
+    public void recordNotReplayable(String reason) {
+        if (failed || ended) return;
+        try {
+            out.write(NOT_REPLAYABLE + reason);
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            failed = true;
+            System.out.println("Error writing input trace, recording stopped: " + e.getMessage());
+        }
+        ended = true;
+        System.out.println("Input trace stopped, it cannot replay past: " + reason);
+    }
+
+    /**
+     * Returns true once a change the trace cannot reproduce has been recorded.
+     */
+    public boolean hasEnded() {
+        return ended;
+    }
+
+    /**
+     * Flushes and closes the trace file.
+     */
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Error closing input trace: " + e.getMessage());
+        }
+    }
+
+    private void write(String event) {
+        if (failed || ended) return;
+        try {
+            out.write(Long.toString(System.nanoTime() - startNanos));
+            out.write(' ');
+            out.write(event);
+            out.write('\n');
+        } catch (IOException e) {
+            // Stop recording instead of reporting an error on every mouse event
+            failed = true;
+            System.out.println("Error writing input trace, recording stopped: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Headless benchmark that replays a recorded input trace into a PaintPanel.
+ * Each event is dispatched on the EDT and followed by a full frame render, and the
+ * input-to-frame latency is measured. The report lists latency percentiles overall
+ * and per event type, plus a checksum of the final image so runs can be compared.
+ *
+ * Usage: java -cp PaintApp.jar InputReplayer trace.txt [--speed max|recorded]
+ */
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+public class InputReplayer {
+    static final int DEFAULT_WIDTH = 1100;
+    static final int DEFAULT_HEIGHT = 700;
+
+    private final PaintPanel panel;
+    private BufferedImage frame = null;
+
+    /**
+     * One parsed trace line.
+     */
+    public static final class TraceEvent {
+        final long nanos;
+        final String type;
+        final String[] args;
+
+        TraceEvent(long nanos, String type, String[] args) {
+            this.nanos = nanos;
+            this.type = type;
+            this.args = args;
+        }
+    }
+
+    public InputReplayer(PaintPanel panel) {
+        this.panel = panel;
+    }
+
+    public static List<TraceEvent> readTrace(File file) throws IOException {
+        List<TraceEvent> events = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.startsWith(InputRecorder.NOT_REPLAYABLE)) {
+                    System.out.println("Warning: the trace stops early, the session went on with "
+                        + line.substring(InputRecorder.NOT_REPLAYABLE.length()));
+                }
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.split(" ");
+                if (parts.length < 2) {
+                    throw new IOException("Malformed trace line " + lineNumber + ": " + line);
+                }
+                try {
+                    events.add(new TraceEvent(Long.parseLong(parts[0]), parts[1],
+                        Arrays.copyOfRange(parts, 2, parts.length)));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed trace line " + lineNumber + ": " + line);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Replays the events on the EDT. Returns the input-to-frame latency of each event
+     * in nanoseconds, grouped by event type.
+     */
+    public Map<String, List<Long>> replay(List<TraceEvent> events, boolean recordedSpeed) throws Exception {
+        Map<String, List<Long>> latencies = new TreeMap<>();
+        long replayStart = System.nanoTime();
+
+        for (TraceEvent event : events) {
+            if (recordedSpeed) {
+                long wait = event.nanos - (System.nanoTime() - replayStart);
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+            }
+
+            long start = System.nanoTime();
+            SwingUtilities.invokeAndWait(() -> apply(event));
+            // Events posted by apply (e.g. component resize) run before this frame
+            SwingUtilities.invokeAndWait(this::renderFrame);
+            latencies.computeIfAbsent(event.type, k -> new ArrayList<>()).add(System.nanoTime() - start);
+        }
+        return latencies;
+    }
+
+    /**
+     * Applies the events without rendering frames, to rebuild the drawing a trace
+     * produces as quickly as possible.
+     */
+    public void applyAll(List<TraceEvent> events) throws Exception {
+        for (TraceEvent event : events) {
+            SwingUtilities.invokeAndWait(() -> apply(event));
+        }
+    }
+
+    /**
+     * Feeds one event into the panel the way live input would arrive.
+     */
+    private void apply(TraceEvent event) {
+        switch (event.type) {
+            case "PRESS":
+                dispatchMouse(MouseEvent.MOUSE_PRESSED, event, InputEvent.BUTTON1_DOWN_MASK);
+                break;
+            case "DRAG":
+                dispatchMouse(MouseEvent.MOUSE_DRAGGED, event, InputEvent.BUTTON1_DOWN_MASK);
+                break;
+            case "RELEASE":
+                dispatchMouse(MouseEvent.MOUSE_RELEASED, event, 0);
+                break;
+            case "MOVE":
+                dispatchMouse(MouseEvent.MOUSE_MOVED, event, 0);
+                break;
+            case "TOOL":
+                panel.setCurrentTool(event.args[0]);
+                break;
+            case "COLOR":
+                panel.setCurrentColor(new Color(Integer.parseUnsignedInt(event.args[0], 16), true));
+                break;
+            case "FILL":
+                panel.setCurrentFillColor(new Color(Integer.parseUnsignedInt(event.args[0], 16), true));
+                break;
+            case "STROKE":
+                panel.setStrokeWidth(Integer.parseInt(event.args[0]));
+                break;
+            case "TOLERANCE":
+                panel.setFillTolerance(Integer.parseInt(event.args[0]));
+                break;
+            case "RESIZE":
+                panel.setSize(Integer.parseInt(event.args[0]), Integer.parseInt(event.args[1]));
+                break;
+            case "INDEXED":
+            case "DISK":
+                try {
+                    if (event.type.equals("INDEXED")) {
+                        panel.setIndexedColorMode(event.args[0].equals("on"));
+                    } else {
+                        panel.setDiskBackedCanvas(event.args[0].equals("on"));
+                    }
+                } catch (IllegalStateException e) {
+                    System.out.println("Warning: could not replay " + event.type + ": " + e.getMessage());
+                }
+                break;
+            case "CLEAR":
+                panel.clearAll();
+                break;
+            case "COPY":
+                panel.copySelection();
+                break;
+            case "CUT":
+                panel.cutSelection();
+                break;
+            case "PASTE":
+                panel.pasteClipboard();
+                break;
+            case "EMOJI":
+                panel.drawCoolEmoji();
+                break;
+            case "REMOVE_BACKGROUND":
+                panel.removeBackgroundImage();
+                break;
+            default:
+                System.out.println("Warning: skipping unknown trace event " + event.type);
+                break;
+        }
+    }
+
+    private void dispatchMouse(int id, TraceEvent event, int modifiers) {
+        int x = Integer.parseInt(event.args[0]);
+        int y = Integer.parseInt(event.args[1]);
+        panel.dispatchEvent(new MouseEvent(panel, id, System.currentTimeMillis(), modifiers,
+            x, y, 1, false, MouseEvent.BUTTON1));
+    }
+
+    private void renderFrame() {
+        int w = Math.max(panel.getWidth(), 1);
+        int h = Math.max(panel.getHeight(), 1);
+        if (frame == null || frame.getWidth() != w || frame.getHeight() != h) {
+            frame = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g2 = frame.createGraphics();
+        panel.paint(g2);
+        g2.dispose();
+    }
+
+    /**
+     * CRC32 over the final full-quality rendering, independent of replay timing.
+     */
+    public String finalImageChecksum() throws Exception {
+        long[] crc = new long[1];
+        SwingUtilities.invokeAndWait(() -> {
+            int[] pixels = PixelKernels.pixelsOf(panel.renderToImage());
+            ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4);
+            bytes.asIntBuffer().put(pixels);
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes);
+            crc[0] = checksum.getValue();
+        });
+        return String.format("%08x", crc[0]);
+    }
+
+    private static String formatPercentiles(List<Long> samples) {
+        long[] sorted = samples.stream().mapToLong(Long::longValue).sorted().toArray();
+        return String.format("n=%-6d p50=%8.3f ms  p90=%8.3f ms  p99=%8.3f ms  max=%8.3f ms",
+            sorted.length, percentile(sorted, 50), percentile(sorted, 90),
+            percentile(sorted, 99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.out.println("Usage: InputReplayer <trace file> [--speed max|recorded]");
+            System.exit(2);
+        }
+
+        boolean recordedSpeed = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--speed") && i + 1 < args.length) {
+                recordedSpeed = args[++i].equals("recorded");
+            }
+        }
+
+        List<TraceEvent> events = readTrace(new File(args[0]));
+        PaintPanel[] holder = new PaintPanel[1];
+        SwingUtilities.invokeAndWait(() -> {
+            holder[0] = new PaintPanel();
+            holder[0].setSize(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+        });
+
+        InputReplayer replayer = new InputReplayer(holder[0]);
+        long start = System.nanoTime();
+        Map<String, List<Long>> latencies = replayer.replay(events, recordedSpeed);
+        long elapsed = System.nanoTime() - start;
+
+        List<Long> all = new ArrayList<>();
+        latencies.values().forEach(all::addAll);
+
+        System.out.printf("Replayed %d events in %.1f ms (%s speed)%n",
+            events.size(), elapsed / 1e6, recordedSpeed ? "recorded" : "max");
+        if (!all.isEmpty()) {
+            System.out.printf("%-8s %s%n", "ALL", formatPercentiles(all));
+            latencies.forEach((type, samples) -> System.out.printf("%-8s %s%n", type, formatPercentiles(samples)));
+        }
+        System.out.println("Final image CRC32: " + replayer.finalImageChecksum());
+        System.exit(0);
+    }
+}
@@ -5,7 +5,10 @@ import java.awt.*;
 import java.util.ArrayList;
 
 public class LineElement extends DrawingElement {
+    private static final long serialVersionUID = 1L;
+    
     private ArrayList<Point> points;
+    private transient Rectangle paintBounds = null;  // Cached; points never change after construction
     
     /**
      * Creates a line element with variable stroke width.
@@ -13,7 +16,10 @@ public class LineElement extends DrawingElement {
      */
     public LineElement(ArrayList<Point> points, Color strokeColor, int strokeWidth) {
         super(strokeColor, strokeWidth);
-        this.points = new ArrayList<>(points);
+        this.points = new ArrayList<>(points.size());
+        for (Point p : points) {
+            this.points.add(new Point(p));   // Own copies, so later edits to the caller's list don't leak in
+        }
     }
     
     /**
@@ -23,6 +29,14 @@ public class LineElement extends DrawingElement {
         this(points, strokeColor, 2);
     }
     
+    /**
+     * Takes ownership of points that were already copied, e.g. by translated().
+     */
+    private LineElement(Color strokeColor, int strokeWidth, ArrayList<Point> ownPoints) {
+        super(strokeColor, strokeWidth);
+        this.points = ownPoints;
+    }
+    
     /**
      * Enhanced drawing method that respects stroke width settings.
      * Creates professional-quality line rendering with smooth curves and proper thickness.
@@ -49,6 +63,87 @@ public class LineElement extends DrawingElement {
         }
     }
     
+    /**
+     * Draft rendering drops points closer than the stroke width to the previous kept
+     * point and draws the rest as one polyline instead of separate segments.
+     */
+    @Override
+    public void drawDraft(Graphics2D g2d) {
+        if (points.size() < 2) return;
+        
+        int[] xs = new int[points.size()];
+        int[] ys = new int[points.size()];
+        int minStep = Math.max(2, strokeWidth);
+        int count = 0;
+        Point last = null;
+        for (int i = 0; i < points.size(); i++) {
+            Point p = points.get(i);
+            boolean isEnd = (i == points.size() - 1);
+            if (last == null || isEnd
+                    || Math.abs(p.x - last.x) >= minStep || Math.abs(p.y - last.y) >= minStep) {
+                xs[count] = p.x;
+                ys[count] = p.y;
+                count++;
+                last = p;
+            }
+        }
+        
+        g2d.setColor(strokeColor);
+        g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2d.drawPolyline(xs, ys, count);
+    }
+    
+    @Override
+    public void drawSilhouette(Graphics2D g2d, Color color) {
+        if (points.size() > 1) {
+            g2d.setColor(color);
+            g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            for (int i = 0; i < points.size() - 1; i++) {
+                Point p1 = points.get(i);
+                Point p2 = points.get(i + 1);
+                g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
+            }
+        }
+    }
+    
+    @Override
+    public Rectangle getPaintBounds() {
+        if (points.isEmpty()) return new Rectangle();
+        if (paintBounds == null) {
+            Point first = points.get(0);
+            int minX = first.x, maxX = first.x;
+            int minY = first.y, maxY = first.y;
+            for (Point p : points) {
+                minX = Math.min(minX, p.x);
+                maxX = Math.max(maxX, p.x);
+                minY = Math.min(minY, p.y);
+                maxY = Math.max(maxY, p.y);
+            }
+            paintBounds = padForStroke(new Rectangle(minX, minY, maxX - minX, maxY - minY));
+        }
+        return new Rectangle(paintBounds);
+    }
+    
+    @Override
+    public DrawingElement translated(int dx, int dy) {
+        ArrayList<Point> moved = new ArrayList<>(points.size());
+        for (Point p : points) {
+            moved.add(new Point(p.x + dx, p.y + dy));
+        }
+        LineElement copy = new LineElement(strokeColor, strokeWidth, moved);
+        if (paintBounds != null) {
+            copy.paintBounds = new Rectangle(paintBounds);
+            copy.paintBounds.translate(dx, dy);
+        }
+        return copy;
+    }
+    
+    @Override
+    public long estimateMemoryBytes() {
+        // Each Point is a 24-byte object plus an 8-byte list slot
+        return super.estimateMemoryBytes() + 40 + points.size() * 32L;
+    }
+    
     public int getPointCount() {
         return points.size();
     }
@@ -0,0 +1,41 @@
+/**
+ * Canvas resource whose heap footprint is tracked by the ResourceManager.
+ * Each release step returns the number of heap bytes it freed; resources that
+ * cannot release anything at a given step simply keep the default.
+ */
+public interface ManagedResource {
+    String getResourceName();
+    
+    /**
+     * Estimated heap bytes currently held by the resource.
+     */
+    long getEstimatedBytes();
+    
+    /**
+     * Bytes held on disk rather than on the heap (archives, spill files).
+     */
+    default long getDiskBytes() {
+        return 0;
+    }
+    
+    /**
+     * Drops data that can be recomputed on demand, such as decoded tiles.
+     */
+    default long evictCaches() {
+        return 0;
+    }
+    
+    /**
+     * Compresses rasters that have not been used recently.
+     */
+    default long compressIdle(long idleMillis) {
+        return 0;
+    }
+    
+    /**
+     * Moves compressible data out of the heap and into a temporary file.
+     */
+    default long spillToDisk() {
+        return 0;
+    }
+}
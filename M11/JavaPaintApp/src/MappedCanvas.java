@@ -0,0 +1,221 @@
+/**
+ * ARGB canvas whose pixels live in a memory-mapped temporary file instead of on the
+ * heap. The OS pages them in and out, so large canvases need neither a large heap
+ * nor long GC pauses. Rows are laid out with a stride wider than the canvas, so the
+ * canvas can grow by mapping more of the file rather than copying the image.
+ * Java2D draws on it through a custom DataBuffer; bulk pixel work reads and writes
+ * whole row spans through read/write/fill.
+ */
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MappedCanvas {
+    private static final int CHUNK_SHIFT = 26;                 // 64M pixels (256 MiB) per mapping
+    private static final int CHUNK_PIXELS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_PIXELS - 1;
+    private static final int PAGE_PIXELS = 1024;               // One 4 KiB page of pixels
+    private static final int MIN_STRIDE = 4096;
+
+    private final File file;
+    private final RandomAccessFile access;
+    private final FileChannel channel;
+    private final List<IntBuffer> chunks = new ArrayList<>();
+    private int stride = 0;
+    private int width = 0, height = 0;
+
+    private MappedCanvas(File file) throws IOException {
+        this.file = file;
+        this.access = new RandomAccessFile(file, "rw");
+        this.channel = access.getChannel();
+    }
+
+    /**
+     * Creates an empty canvas backed by a new temporary file.
+     */
+    public static MappedCanvas create() throws IOException {
+        File file = File.createTempFile("paint-canvas", ".bin");
+        file.deleteOnExit();
+        return new MappedCanvas(file);
+    }
+
+    /**
+     * Returns the mapped buffer behind an image created by a MappedCanvas, or null if
+     * the image is stored some other way.
+     */
+    public static MappedDataBuffer bufferOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (buffer instanceof MappedDataBuffer && image.getRaster().getParent() == null)
+            ? (MappedDataBuffer) buffer : null;
+    }
+
+    /**
+     * Returns the row stride, in pixels, of an image created by a MappedCanvas.
+     */
+    public static int strideOf(BufferedImage image) {
+        return ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+    }
+
+    /**
+     * Returns an image of the given size over the mapped pixels. Pixels inside both
+     * the old and new size are kept; newly exposed pixels are undefined until the
+     * caller fills them. Growing within the reserved stride only maps more of the
+     * file; a wider canvas moves rows within the file, never through the heap.
+     */
+    public BufferedImage resize(int newWidth, int newHeight) throws IOException {
+        if ((long) Math.max(stride, roundUp(newWidth, PAGE_PIXELS)) * newHeight > Integer.MAX_VALUE) {
+            // DataBuffer and SampleModel index pixels with an int
+            throw new IOException("Canvas too large: " + newWidth + "x" + newHeight);
+        }
+        if (newWidth > stride) {
+            int newStride = roundUp(Math.max(MIN_STRIDE, newWidth + newWidth / 2), PAGE_PIXELS);
+            if ((long) newStride * newHeight > Integer.MAX_VALUE) newStride = roundUp(newWidth, PAGE_PIXELS);
+            ensureCapacity((long) newStride * newHeight);
+            restride(newStride, Math.min(height, newHeight));
+        } else {
+            ensureCapacity((long) stride * newHeight);
+        }
+        width = newWidth;
+        height = newHeight;
+
+        MappedDataBuffer buffer = new MappedDataBuffer(chunks.toArray(new IntBuffer[0]), stride * height);
+        DirectColorModel colorModel = (DirectColorModel) ColorModel.getRGBdefault();
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+            width, height, stride, colorModel.getMasks());
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * Maps whole chunks until the file covers the given number of pixels. The file is
+     * sparse, so reserved pixels that are never written cost no disk or memory.
+     */
+    private void ensureCapacity(long pixels) throws IOException {
+        while ((long) chunks.size() * CHUNK_PIXELS < pixels) {
+            long position = (long) chunks.size() * CHUNK_PIXELS * 4;
+            IntBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) CHUNK_PIXELS * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+            chunks.add(chunk);
+        }
+    }
+
+    /**
+     * Moves the rows that are kept to a wider stride, last row first so no row is
+     * overwritten before it has been moved.
+     */
+    private void restride(int newStride, int rows) {
+        if (stride > 0) {
+            MappedDataBuffer buffer = new MappedDataBuffer(chunks.toArray(new IntBuffer[0]), 0);
+            int[] row = new int[width];
+            for (int y = rows - 1; y > 0; y--) {
+                buffer.read(y * stride, row, 0, width);
+                buffer.write(y * newStride, row, 0, width);
+            }
+        }
+        stride = newStride;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Bytes of the file spanned by the current canvas rows.
+     */
+    public long getMappedBytes() {
+        return (long) stride * height * 4;
+    }
+
+    /**
+     * Closes and deletes the backing file. Images from this canvas must not be used
+     * afterwards; the mappings themselves are released once they are unreachable.
+     */
+    public void dispose() {
+        chunks.clear();
+        try {
+            channel.close();
+            access.close();
+        } catch (IOException e) {
+            System.out.println("Error closing mapped canvas: " + e.getMessage());
+        }
+        file.delete();
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    /**
+     * Int pixel buffer spread over the mapped chunks. Element i is pixel
+     * (i % stride, i / stride) of the canvas.
+     */
+    public static final class MappedDataBuffer extends DataBuffer {
+        private final IntBuffer[] chunks;
+
+        MappedDataBuffer(IntBuffer[] chunks, int size) {
+            super(DataBuffer.TYPE_INT, size);
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return chunks[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            chunks[i >>> CHUNK_SHIFT].put(i & CHUNK_MASK, val);
+        }
+
+        /**
+         * Copies length pixels starting at element offset into dst.
+         */
+        public void read(int offset, int[] dst, int dstOffset, int length) {
+            while (length > 0) {
+                int run = Math.min(length, CHUNK_PIXELS - (offset & CHUNK_MASK));
+                chunks[offset >>> CHUNK_SHIFT].get(offset & CHUNK_MASK, dst, dstOffset, run);
+                offset += run;
+                dstOffset += run;
+                length -= run;
+            }
+        }
+
+        /**
+         * Copies length pixels from src into the buffer starting at element offset.
+         */
+        public void write(int offset, int[] src, int srcOffset, int length) {
+            while (length > 0) {
+                int run = Math.min(length, CHUNK_PIXELS - (offset & CHUNK_MASK));
+                chunks[offset >>> CHUNK_SHIFT].put(offset & CHUNK_MASK, src, srcOffset, run);
+                offset += run;
+                srcOffset += run;
+                length -= run;
+            }
+        }
+
+        /**
+         * Fills a rectangle of a canvas laid out with the given stride.
+         */
+        public void fill(int stride, int x, int y, int w, int h, int argb) {
+            if (w <= 0) return;
+            int[] row = new int[w];
+            Arrays.fill(row, argb);
+            for (int r = y; r < y + h; r++) {
+                write(r * stride + x, row, 0, w);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ public class PaintApp extends JFrame {
     private Color currentColor = Color.BLACK;
     private Color currentFillColor = Color.WHITE;
     private String currentTool = "Pencil";
+    private JToggleButton regionTool;
     private int currentStrokeWidth = 2; // New: stroke width control
     private ButtonGroup toolGroup;
 
@@ -23,6 +24,8 @@ public class PaintApp extends JFrame {
     private JPanel fillColorPanel;
     private JSlider strokeSlider; // New: stroke width slider
     private JLabel strokeLabel; // New: displays current stroke width
+    private JCheckBoxMenuItem indexedColorItem;
+    private JCheckBoxMenuItem diskBackedItem;
 
     // Konami code for easter egg
     private final List<Integer> KONAMI_CODE = Arrays.asList(
@@ -41,9 +44,13 @@ public class PaintApp extends JFrame {
         add(paintPanel, BorderLayout.CENTER);
 
         createToolbar();
+        createMenuBar();
         synchronizeInitialState();
         setupKeyboardHandling();
 
+        // Make sure an in-progress input trace is flushed on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> paintPanel.stopInputRecording()));
+
         setLocationRelativeTo(null);
         setVisible(true);
     }
@@ -107,6 +114,12 @@ public class PaintApp extends JFrame {
             case "Rectangle":
                 // Original rectangle drawing code
                 break;
+            case "Select":
+            case "Region":
+                g2.setStroke(new BasicStroke(1.5f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+                        10.0f, new float[] { 2.0f }, 0.0f));
+                g2.drawRect(3, 3, size - 6, size - 6);
+                break;
             // ... other tools
             default:
                 g2.drawRect(4, 4, size - 8, size - 8);
@@ -141,6 +154,319 @@ public class PaintApp extends JFrame {
         add(toolBar, BorderLayout.NORTH);
     }
 
+    /**
+     * Builds the menu bar for document-level actions that do not fit the toolbar.
+     */
+    private void createMenuBar() {
+        JMenuBar menuBar = new JMenuBar();
+
+        JMenu fileMenu = new JMenu("File");
+        JMenuItem importBackground = new JMenuItem("Import Background Image...");
+        importBackground.addActionListener(e -> showImportBackgroundDialog());
+        fileMenu.add(importBackground);
+
+        JMenuItem removeBackground = new JMenuItem("Remove Background Image");
+        removeBackground.addActionListener(e -> paintPanel.removeBackgroundImage());
+        fileMenu.add(removeBackground);
+        fileMenu.addSeparator();
+
+        JCheckBoxMenuItem recordTrace = new JCheckBoxMenuItem("Record Input Trace...");
+        recordTrace.addActionListener(e -> toggleInputRecording(recordTrace));
+        fileMenu.add(recordTrace);
+
+        JMenuItem exportTimelapse = new JMenuItem("Export Timelapse...");
+        exportTimelapse.addActionListener(e -> showExportTimelapseDialog());
+        fileMenu.add(exportTimelapse);
+
+        menuBar.add(fileMenu);
+
+        JMenu editMenu = new JMenu("Edit");
+        int shortcut = InputEvent.CTRL_DOWN_MASK;
+        JMenuItem copy = new JMenuItem("Copy");
+        copy.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_C, shortcut));
+        copy.addActionListener(e -> paintPanel.copySelection());
+        editMenu.add(copy);
+
+        JMenuItem cut = new JMenuItem("Cut");
+        cut.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_X, shortcut));
+        cut.addActionListener(e -> paintPanel.cutSelection());
+        editMenu.add(cut);
+
+        JMenuItem paste = new JMenuItem("Paste");
+        paste.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_V, shortcut));
+        paste.addActionListener(e -> {
+            // The pasted block floats until it is dropped, so switch to the tool that moves it
+            if (paintPanel.hasClipboard() && !regionTool.isSelected()) regionTool.doClick();
+            paintPanel.pasteClipboard();
+        });
+        editMenu.add(paste);
+
+        menuBar.add(editMenu);
+
+        JMenu viewMenu = new JMenu("View");
+        indexedColorItem = new JCheckBoxMenuItem("Indexed Colour Canvas (8-bit)");
+        indexedColorItem.setToolTipText("Store the canvas at 1 byte per pixel using a palette");
+        indexedColorItem.addActionListener(e -> toggleIndexedColorMode());
+        viewMenu.add(indexedColorItem);
+        diskBackedItem = new JCheckBoxMenuItem("Disk-backed Canvas");
+        diskBackedItem.setToolTipText("Keep the canvas pixels in a memory-mapped file instead of the heap");
+        diskBackedItem.addActionListener(e -> toggleDiskBackedCanvas());
+        viewMenu.add(diskBackedItem);
+        // The canvas promotes itself to ARGB when the palette overflows, and the two
+        // modes exclude each other, so resync on open
+        viewMenu.addMenuListener(new javax.swing.event.MenuListener() {
+            @Override
+            public void menuSelected(javax.swing.event.MenuEvent e) {
+                indexedColorItem.setSelected(paintPanel.isIndexedColorMode());
+                diskBackedItem.setSelected(paintPanel.isDiskBackedCanvas());
+            }
+
+            @Override
+            public void menuDeselected(javax.swing.event.MenuEvent e) {
+            }
+
+            @Override
+            public void menuCanceled(javax.swing.event.MenuEvent e) {
+            }
+        });
+        viewMenu.addSeparator();
+
+        JMenuItem playTimelapse = new JMenuItem("Play Timelapse");
+        playTimelapse.addActionListener(e -> {
+            if (!paintPanel.startTimelapsePlayback(null)) {
+                JOptionPane.showMessageDialog(this,
+                        "There is no drawing history to play back.",
+                        "Play Timelapse",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+        viewMenu.add(playTimelapse);
+        viewMenu.addSeparator();
+
+        JMenuItem memoryUsage = new JMenuItem("Memory Usage...");
+        memoryUsage.addActionListener(e -> showMemoryUsageDialog());
+        viewMenu.add(memoryUsage);
+
+        menuBar.add(viewMenu);
+
+        JMenu filterMenu = new JMenu("Filters");
+        JMenuItem blur = new JMenuItem("Gaussian Blur...");
+        blur.addActionListener(e -> showFilterDialog("Gaussian Blur",
+                new String[]{"Radius"}, new int[][]{{1, 50, 5}},
+                v -> new GaussianBlurFilter(v[0])));
+        filterMenu.add(blur);
+
+        JMenuItem sharpen = new JMenuItem("Sharpen...");
+        sharpen.addActionListener(e -> showFilterDialog("Sharpen",
+                new String[]{"Radius", "Amount (%)"}, new int[][]{{1, 20, 2}, {0, 300, 100}},
+                v -> new SharpenFilter(v[0], v[1] / 100.0)));
+        filterMenu.add(sharpen);
+
+        JMenuItem brightness = new JMenuItem("Brightness/Contrast...");
+        brightness.addActionListener(e -> showFilterDialog("Brightness/Contrast",
+                new String[]{"Brightness", "Contrast"}, new int[][]{{-100, 100, 0}, {-100, 100, 0}},
+                v -> new BrightnessContrastFilter(v[0], v[1])));
+        filterMenu.add(brightness);
+
+        menuBar.add(filterMenu);
+        setJMenuBar(menuBar);
+    }
+
+    /**
+     * Lets the user pick a reference image to trace over.
+     * Large files open immediately because only the visible region is decoded.
+     */
+    private void showImportBackgroundDialog() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                "Images (PNG, TIFF, JPEG, GIF, BMP)", "png", "tif", "tiff", "jpg", "jpeg", "gif", "bmp"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        try {
+            paintPanel.importBackgroundImage(chooser.getSelectedFile());
+        } catch (java.io.IOException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "Could not open image:\n" + ex.getMessage(),
+                    "Import Background Image",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Starts or stops recording canvas input to a trace file for InputReplayer.
+     */
+    private void toggleInputRecording(JCheckBoxMenuItem item) {
+        if (paintPanel.isRecordingInput()) {
+            paintPanel.stopInputRecording();
+            item.setSelected(false);
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File("paint-trace.txt"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            item.setSelected(false);
+            return;
+        }
+        try {
+            paintPanel.startInputRecording(chooser.getSelectedFile());
+            item.setSelected(true);
+        } catch (java.io.IOException ex) {
+            item.setSelected(false);
+            JOptionPane.showMessageDialog(this,
+                    "Could not start recording:\n" + ex.getMessage(),
+                    "Record Input Trace",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Exports the drawing history as an animated GIF, or as a PNG sequence into a
+     * directory, on a background thread with a progress monitor.
+     */
+    private void showExportTimelapseDialog() {
+        java.util.List<DrawingElement> timeline;
+        try {
+            timeline = paintPanel.getTimeline();
+        } catch (java.io.IOException ex) {
+            timeline = java.util.Collections.emptyList();
+        }
+        if (timeline.isEmpty()) {
+            JOptionPane.showMessageDialog(this,
+                    "There is no drawing history to export.",
+                    "Export Timelapse",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Timelapse (.gif file, or a folder for PNG frames)");
+        chooser.setSelectedFile(new java.io.File("timelapse.gif"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.io.File output = chooser.getSelectedFile();
+        boolean gif = output.getName().toLowerCase().endsWith(".gif");
+
+        TimelapseExporter exporter = new TimelapseExporter(timeline, paintPanel.getWidth(), paintPanel.getHeight());
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting timelapse...", null, 0, exporter.getFrameCount());
+        exporter.setProgressListener(frame -> SwingUtilities.invokeLater(() -> monitor.setProgress(frame)));
+
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return gif ? exporter.exportGif(output) : exporter.exportPngSequence(output);
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    get();
+                } catch (Exception ex) {
+                    Throwable cause = (ex.getCause() != null) ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(PaintApp.this,
+                            "Could not export timelapse:\n" + cause.getMessage(),
+                            "Export Timelapse",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Shows a slider dialog for a filter with a live low-resolution preview on the
+     * canvas. Each slider is given as {min, max, initial}.
+     */
+    private void showFilterDialog(String title, String[] labels, int[][] ranges,
+                                  java.util.function.Function<int[], CanvasFilter> factory) {
+        if (paintPanel.isFilterRunning()) return;
+        Rectangle region = paintPanel.getRegionSelection();   // Null filters the whole canvas
+
+        JPanel controls = new JPanel(new GridLayout(0, 1, 0, 4));
+        JSlider[] sliders = new JSlider[labels.length];
+        java.util.function.Supplier<CanvasFilter> current = () -> {
+            int[] values = new int[sliders.length];
+            for (int i = 0; i < sliders.length; i++) {
+                values[i] = sliders[i].getValue();
+            }
+            return factory.apply(values);
+        };
+
+        for (int i = 0; i < labels.length; i++) {
+            sliders[i] = new JSlider(ranges[i][0], ranges[i][1], ranges[i][2]);
+            sliders[i].setMajorTickSpacing(Math.max(1, (ranges[i][1] - ranges[i][0]) / 4));
+            sliders[i].setPaintTicks(true);
+            sliders[i].setPaintLabels(true);
+            sliders[i].addChangeListener(e -> paintPanel.previewFilter(current.get(), region));
+            controls.add(new JLabel(labels[i]));
+            controls.add(sliders[i]);
+        }
+
+        paintPanel.previewFilter(current.get(), region);
+        int choice = JOptionPane.showConfirmDialog(this, controls, title,
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) {
+            paintPanel.cancelFilterPreview();
+            return;
+        }
+
+        paintPanel.applyFilter(current.get(), region, error -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(this,
+                        "Could not apply " + title + ":\n" + error.getMessage(),
+                        title,
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+
+    private void toggleDiskBackedCanvas() {
+        try {
+            paintPanel.setDiskBackedCanvas(diskBackedItem.isSelected());
+        } catch (IllegalStateException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "The canvas storage could not be changed:\n" + ex.getMessage(),
+                    "Disk-backed Canvas",
+                    JOptionPane.WARNING_MESSAGE);
+        }
+        diskBackedItem.setSelected(paintPanel.isDiskBackedCanvas());
+        indexedColorItem.setSelected(paintPanel.isIndexedColorMode());
+    }
+
+    private void toggleIndexedColorMode() {
+        try {
+            paintPanel.setIndexedColorMode(indexedColorItem.isSelected());
+        } catch (IllegalStateException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "The colour mode could not be changed:\n" + ex.getMessage(),
+                    "Indexed Colour Canvas",
+                    JOptionPane.INFORMATION_MESSAGE);
+        }
+        indexedColorItem.setSelected(paintPanel.isIndexedColorMode());
+        diskBackedItem.setSelected(paintPanel.isDiskBackedCanvas());
+    }
+
+    /**
+     * Shows the estimated heap use of each canvas resource against the memory budget.
+     */
+    private void showMemoryUsageDialog() {
+        ResourceManager resources = paintPanel.getResourceManager();
+        StringBuilder report = new StringBuilder();
+        resources.getBytesByResource().forEach((name, bytes) ->
+                report.append(name).append(": ").append(formatBytes(bytes)).append("\n"));
+        report.append("\nTotal: ").append(formatBytes(resources.getTotalBytes()))
+                .append(" of ").append(formatBytes(resources.getBudget())).append(" budget");
+        report.append("\nOn disk: ").append(formatBytes(resources.getTotalDiskBytes()));
+
+        JOptionPane.showMessageDialog(this, report.toString(), "Memory Usage", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
     /**
      * Creates stroke width controls including a slider and visual feedback.
      * This demonstrates advanced Swing component usage and real-time parameter
@@ -173,6 +499,13 @@ public class PaintApp extends JFrame {
         strokeLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
         strokeLabel.setPreferredSize(new Dimension(30, 30));
         toolBar.add(strokeLabel);
+
+        // Fill tolerance lets the fill tool cover antialiased edges
+        toolBar.add(new JLabel("Tolerance:"));
+        JSpinner tolerance = new JSpinner(new SpinnerNumberModel(0, 0, 255, 8));
+        tolerance.setToolTipText("How different a colour may be and still be filled (0 = exact match)");
+        tolerance.addChangeListener(e -> paintPanel.setFillTolerance((Integer) tolerance.getValue()));
+        toolBar.add(tolerance);
     }
 
     /**
@@ -207,6 +540,14 @@ public class PaintApp extends JFrame {
 
         JToggleButton fill = new JToggleButton("Fill", createToolIcon("Fill", 16));
         setupToolButton(fill, "Fill", toolBar);
+
+        JToggleButton select = new JToggleButton("Select", createToolIcon("Select", 16));
+        select.setToolTipText("Select and move drawn lines and shapes");
+        setupToolButton(select, "Select", toolBar);
+
+        regionTool = new JToggleButton("Region", createToolIcon("Region", 16));
+        regionTool.setToolTipText("Select a block of canvas pixels to copy, cut and paste");
+        setupToolButton(regionTool, "Region", toolBar);
     }
 
     private void setupToolButton(JToggleButton button, String toolName, JPanel toolBar) {
@@ -242,13 +583,7 @@ public class PaintApp extends JFrame {
         label.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
         toolBar.add(label);
 
-        Color[] colors = {
-                Color.BLACK, Color.DARK_GRAY, Color.GRAY, Color.LIGHT_GRAY, Color.WHITE,
-                Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW, Color.MAGENTA,
-                Color.CYAN, Color.ORANGE, Color.PINK, new Color(128, 0, 128), new Color(139, 69, 19)
-        };
-
-        for (Color color : colors) {
+        for (Color color : CanvasPalette.DEFAULT_COLORS) {
             JButton btn = new JButton();
             btn.setBackground(color);
             btn.setPreferredSize(new Dimension(25, 25));
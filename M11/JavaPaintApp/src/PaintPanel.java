@@ -6,9 +6,12 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Queue;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class PaintPanel extends JPanel implements ComponentListener {
     // Drawing state
@@ -16,21 +19,139 @@ public class PaintPanel extends JPanel implements ComponentListener {
     private Color currentFillColor = Color.WHITE;
     private String currentTool = "Pencil";
     private int currentStrokeWidth = 2;
+    private int fillTolerance = 0;              // Per-channel difference the fill tool spreads into
     
     // Drawing systems
     private DrawingSystem drawingSystem = new DrawingSystem();
-    private BufferedImage persistentImage = null;
+    private BufferedImage persistentImage = null;   // Only read through canvasImage()
+    private SwappableRaster swappedCanvas = null;    // The canvas while compressed or spilled
+    private long canvasLastUse = System.currentTimeMillis();
     private boolean isInRasterMode = false;
+    private boolean indexedColorMode = false;   // 8-bit palette canvas instead of ARGB
+    private CanvasPalette palette = null;
+    private boolean diskBackedMode = false;     // Canvas pixels in a memory-mapped file
+    private MappedCanvas mappedCanvas = null;
+    private boolean resizePending = false;      // Window grew while a filter was running
+    private BackgroundImageLayer backgroundLayer = null;
+    private PickingBuffer pickingBuffer = new PickingBuffer();
+    private SceneRenderCache sceneCache = new SceneRenderCache();
+    private ResourceManager resourceManager = new ResourceManager(ResourceManager.defaultBudget());
+    private RenderQualityController renderQuality = new RenderQualityController(this);
+    private InputRecorder inputRecorder = null;
+    private BrushEngine brush = new BrushEngine();   // Raster eraser and pencil
+    
+    // Timelapse playback, shown instead of the canvas while active
+    private TimelapseRenderer playback = null;
+    private Timer playbackTimer = null;
+    private Runnable playbackFinished = () -> {};
+
+    // Idle resources, the canvas included, are only released when the budget is checked
+    private static final int BUDGET_CHECK_MILLIS = 5_000;
+    private final Timer budgetTimer = new Timer(BUDGET_CHECK_MILLIS, e -> resourceManager.enforceBudget());
+    
+    // Raster filters: low-res preview over the canvas while a full-res pass runs
+    private FilterRunner filterRunner = null;   // Created on first use
+    private BufferedImage filterPreview = null;
+    private Rectangle filterRegion = null;
+    private BufferedImage filterSource = null;   // Composited canvas the preview is made from
+    private CompletableFuture<BufferedImage> filterJob = null;
+    
+    // Region tool: marquee, clipboard and a floating pasted selection
+    private Rectangle regionSelection = null;
+    private RegionClip clipboard = null;        // Shares canvas pixels until either side changes
+    private RegionClip floating = null;
+    private Point floatingOrigin = null;
+    private Point floatingGrab = null;          // Cursor offset while dragging the floating clip
     
     // Mouse interaction state
     private Point startPoint, endPoint;
     private ArrayList<Point> currentLine = new ArrayList<>();
     private boolean isActivelyDrawing = false;
+    
+    // Selection state (indices into drawingSystem, -1 when none)
+    private int hoveredIndex = -1;
+    private int selectedIndex = -1;
+    private Point dragAnchor = null;
 
     public PaintPanel() {
         setBackground(Color.WHITE);
         setupMouseHandling();
         addComponentListener(this);
+        registerManagedResources();
+    }
+
+    /**
+     * Registers every heap-heavy canvas structure with the resource manager.
+     */
+    private void registerManagedResources() {
+        resourceManager.register(new ManagedResource() {
+            @Override
+            public String getResourceName() {
+                return "Canvas raster";
+            }
+
+            @Override
+            public long getEstimatedBytes() {
+                if (swappedCanvas != null) return swappedCanvas.getHeapBytes();
+                if (persistentImage == null || MappedCanvas.bufferOf(persistentImage) != null) return 0;
+                long pixels = (long) persistentImage.getWidth() * persistentImage.getHeight();
+                return (CanvasPalette.indicesOf(persistentImage) != null) ? pixels : pixels * 4;
+            }
+
+            @Override
+            public long getDiskBytes() {
+                if (swappedCanvas != null) return swappedCanvas.getDiskBytes();
+                return (persistentImage != null && MappedCanvas.bufferOf(persistentImage) != null)
+                    ? mappedCanvas.getMappedBytes() : 0;
+            }
+
+            @Override
+            public long compressIdle(long idleMillis) {
+                return compressCanvasIfIdle(idleMillis);
+            }
+
+            @Override
+            public long spillToDisk() {
+                return (swappedCanvas != null) ? swappedCanvas.spill() : 0;
+            }
+        });
+        resourceManager.register(drawingSystem);
+        resourceManager.register(pickingBuffer);
+        resourceManager.register(sceneCache);
+        resourceManager.register(new ManagedResource() {
+            @Override
+            public String getResourceName() {
+                return "Clipboard";
+            }
+
+            @Override
+            public long getEstimatedBytes() {
+                long bytes = (clipboard != null) ? clipboard.getOwnedBytes() : 0;
+                return bytes + ((floating != null && floating != clipboard) ? floating.getOwnedBytes() : 0);
+            }
+        });
+        brush.setWriteListener(this::beforeCanvasWrite);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        budgetTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        budgetTimer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Heap size of a new canvas: 1 byte per pixel when indexed, 4 for ARGB, and
+     * none when disk-backed.
+     */
+    private long canvasBytes(int width, int height) {
+        if (diskBackedMode) return 0;
+        return (long) width * height * (indexedColorMode ? 1 : 4);
     }
 
     /**
@@ -42,7 +163,15 @@ public class PaintPanel extends JPanel implements ComponentListener {
             @Override
             public void mousePressed(MouseEvent e) {
                 if (!SwingUtilities.isLeftMouseButton(e)) return;
+                if (playback != null) {
+                    // Clicking the canvas ends playback instead of drawing
+                    stopTimelapsePlayback();
+                    return;
+                }
+                if (filterJob != null) return;  // Canvas is read by the running filter
                 startPoint = e.getPoint();
+                renderQuality.markInteraction();
+                if (inputRecorder != null) inputRecorder.recordMouse("PRESS", e.getPoint());
 
                 switch (currentTool) {
                     case "Fill":
@@ -50,13 +179,24 @@ public class PaintPanel extends JPanel implements ComponentListener {
                         break;
                     case "Eraser":
                         switchToRasterModePreservingContent();
-                        eraseAtPoint(e.getPoint());
+                        beginBrushStroke(e.getPoint());
                         break;
                     case "Pencil":
+                        if (isInRasterMode) {
+                            // No vector history in raster mode, so stamp straight into the canvas
+                            beginBrushStroke(e.getPoint());
+                            break;
+                        }
                         currentLine.clear();
                         currentLine.add(startPoint);
                         isActivelyDrawing = true;
                         break;
+                    case "Select":
+                        selectElementAt(e.getPoint());
+                        break;
+                    case "Region":
+                        beginRegionGesture(e.getPoint());
+                        break;
                     // Rectangle and Oval store start point for drag operations
                 }
             }
@@ -65,37 +205,61 @@ public class PaintPanel extends JPanel implements ComponentListener {
             public void mouseDragged(MouseEvent e) {
                 if (!SwingUtilities.isLeftMouseButton(e)) return;
                 endPoint = e.getPoint();
+                renderQuality.markInteraction();
+                if (inputRecorder != null) inputRecorder.recordMouse("DRAG", e.getPoint());
 
                 switch (currentTool) {
                     case "Eraser":
-                        if (startPoint != null) {
-                            eraseLineFromTo(startPoint, endPoint);
-                            startPoint = endPoint; // Update for continuous erasing
-                        }
+                        continueBrushStroke(endPoint);
                         break;
                     case "Pencil":
                         if (isActivelyDrawing) {
                             currentLine.add(endPoint);
+                        } else if (isInRasterMode) {
+                            continueBrushStroke(endPoint);
                         }
                         break;
+                    case "Select":
+                        // Only the old and new bounds are repainted
+                        moveSelectionTo(endPoint);
+                        return;
+                    case "Region":
+                        continueRegionGesture(endPoint);
+                        return;
                 }
                 repaint();
             }
 
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                if (currentTool.equals("Select")) {
+                    if (inputRecorder != null) inputRecorder.recordMouse("MOVE", e.getPoint());
+                    updateHover(e.getPoint());
+                }
+            }
+
             @Override
             public void mouseReleased(MouseEvent e) {
                 if (!SwingUtilities.isLeftMouseButton(e)) return;
                 endPoint = e.getPoint();
+                if (inputRecorder != null) inputRecorder.recordMouse("RELEASE", e.getPoint());
 
                 switch (currentTool) {
                     case "Pencil":
                         // Convert temporary line to permanent drawing element
                         if (isActivelyDrawing && currentLine.size() > 1) {
                             LineElement lineElement = new LineElement(currentLine, currentColor, currentStrokeWidth);
-                            drawingSystem.addElement(lineElement);
+                            commitElement(lineElement);
                         }
                         isActivelyDrawing = false;
                         currentLine.clear();
+                        brush.end();
+                        break;
+                    case "Eraser":
+                        brush.end();
+                        break;
+                    case "Region":
+                        floatingGrab = null;
                         break;
                     case "Rectangle":
                     case "Oval":
@@ -107,7 +271,7 @@ public class PaintPanel extends JPanel implements ComponentListener {
                                                    !currentFillColor.equals(currentColor);
                                 ShapeElement shapeElement = new ShapeElement(
                                     shape, currentColor, currentFillColor, shouldFill, currentStrokeWidth);
-                                drawingSystem.addElement(shapeElement);
+                                commitElement(shapeElement);
                             }
                         }
                         break;
@@ -121,6 +285,48 @@ public class PaintPanel extends JPanel implements ComponentListener {
 
         addMouseListener(handler);
         addMouseMotionListener(handler);
+
+        // Ctrl + wheel zooms the background reference image
+        addMouseWheelListener(e -> {
+            if (backgroundLayer == null || !e.isControlDown()) return;
+            renderQuality.markInteraction();
+            double factor = Math.pow(1.1, -e.getPreciseWheelRotation());
+            backgroundLayer.setZoom(backgroundLayer.getZoom() * factor);
+            repaint();
+        });
+    }
+
+    /**
+     * Adds a finished element to the scene and lets the drawing system bake old
+     * history once it grows past its limits.
+     */
+    private void commitElement(DrawingElement element) {
+        if (isInRasterMode && canvasImage() != null) {
+            // Raster mode keeps no live vector scene, so the element goes straight onto the canvas
+            flattenOntoCanvas(element);
+            drawingSystem.recordFlattened(element);
+            return;
+        }
+        drawingSystem.addElement(element);
+        if (drawingSystem.compactIfNeeded(getWidth(), getHeight())) {
+            // Baking drops the oldest elements, so selected indices are stale
+            clearSelection();
+        }
+        resourceManager.enforceBudget();
+    }
+
+    private void flattenOntoCanvas(DrawingElement element) {
+        ensureCanvasColor(element.getStrokeColor());
+        if (element instanceof ShapeElement && ((ShapeElement) element).isFilled()) {
+            ensureCanvasColor(((ShapeElement) element).getFillColor());
+        }
+        Rectangle bounds = element.getPaintBounds();
+        beforeCanvasWrite(bounds.x, bounds.y, bounds.width, bounds.height);
+        Graphics2D g2 = canvasImage().createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, isIndexedCanvas() ?
+            RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+        element.draw(g2);
+        g2.dispose();
     }
 
     /**
@@ -130,19 +336,38 @@ public class PaintPanel extends JPanel implements ComponentListener {
     private void switchToRasterModePreservingContent() {
         if (!isInRasterMode) {
             ensureRasterImageExists();
-            Graphics2D g2 = persistentImage.createGraphics();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             
-            // Render white background
-            g2.setColor(Color.WHITE);
-            g2.fillRect(0, 0, persistentImage.getWidth(), persistentImage.getHeight());
+            // Start from a transparent canvas; the paper and reference show through it
+            fillCanvasBackground(canvasImage());
+            if (isIndexedCanvas() && !paletteCoversScene()) {
+                promoteCanvasToArgb();
+            }
             
-            // Transfer all vector content to raster image
-            drawingSystem.renderAll(g2, persistentImage.getWidth(), persistentImage.getHeight());
-            g2.dispose();
+            if (isIndexedCanvas()) {
+                // Antialiasing is skipped on an indexed canvas, where blended edge
+                // colours would not be in the palette
+                Graphics2D g2 = canvasImage().createGraphics();
+                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                drawingSystem.renderElements(g2);
+                g2.dispose();
+            } else {
+                // The scene cache is usually current from the last repaint, so only
+                // elements added since then are rendered before compositing it in
+                BufferedImage scene = sceneCache.sync(drawingSystem,
+                    canvasImage().getWidth(), canvasImage().getHeight());
+                int[] scenePixels = PixelKernels.pixelsOf(scene);
+                int[] canvasPixels = PixelKernels.pixelsOf(canvasImage());
+                if (canvasPixels != null) {
+                    PixelKernels.compositeOver(scenePixels, 0, canvasPixels, 0, canvasPixels.length);
+                } else {
+                    compositeOntoMappedCanvas(scenePixels);
+                }
+            }
             
-            // Clear vector system since content is now preserved in raster image
-            drawingSystem.clear();
+            // The content is preserved in the raster image; the elements only stay in the timeline
+            drawingSystem.flattenIntoTimeline();
+            sceneCache.evictCaches();
+            clearSelection();
             isInRasterMode = true;
         }
     }
@@ -155,86 +380,280 @@ public class PaintPanel extends JPanel implements ComponentListener {
         int w = Math.max(getWidth(), 1);
         int h = Math.max(getHeight(), 1);
         
-        if (persistentImage == null || persistentImage.getWidth() != w || persistentImage.getHeight() != h) {
-            BufferedImage newImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = newImage.createGraphics();
-            g2.setColor(Color.WHITE);
-            g2.fillRect(0, 0, w, h);
+        if (canvasImage() == null || canvasImage().getWidth() != w || canvasImage().getHeight() != h) {
+            if (isMappedCanvas()) {
+                resizeMappedCanvas(w, h);
+                return;
+            }
+            resourceManager.ensureHeadroom(canvasBytes(w, h));
+            BufferedImage newImage = createCanvasImage(w, h);
             
             // Copy existing content if available
-            if (persistentImage != null) {
-                g2.drawImage(persistentImage, 0, 0, null);
+            if (canvasImage() != null) {
+                copyCanvasContent(canvasImage(), newImage);
+            }
+            setCanvasImage(newImage);
+        }
+    }
+
+    /**
+     * Background pixel value of the raster canvas. Unpainted pixels are transparent:
+     * the white paper is the panel background, with any reference image drawn between
+     * it and the canvas, so adding or removing a reference never touches the pixels.
+     */
+    private int canvasBackgroundArgb() {
+        return 0x00000000;
+    }
+
+    /**
+     * Creates a blank canvas in the current colour mode, filled with the background.
+     */
+    private BufferedImage createCanvasImage(int w, int h) {
+        if (diskBackedMode) {
+            BufferedImage image = createMappedCanvasImage(w, h);
+            if (image != null) return image;
+        }
+        if (indexedColorMode) {
+            return palette.createImage(w, h, palette.indexOf(canvasBackgroundArgb()));
+        }
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        fillCanvasBackground(image);
+        return image;
+    }
+
+    private void fillCanvasBackground(BufferedImage image) {
+        byte[] indices = CanvasPalette.indicesOf(image);
+        MappedCanvas.MappedDataBuffer mapped = MappedCanvas.bufferOf(image);
+        if (indices != null) {
+            PixelKernels.fill(indices, 0, indices.length, (byte) palette.indexOf(canvasBackgroundArgb()));
+        } else if (mapped != null) {
+            mapped.fill(MappedCanvas.strideOf(image), 0, 0, image.getWidth(), image.getHeight(),
+                canvasBackgroundArgb());
+        } else {
+            int[] pixels = PixelKernels.pixelsOf(image);
+            PixelKernels.fill(pixels, 0, pixels.length, canvasBackgroundArgb());
+        }
+    }
+
+    /**
+     * Copies the overlapping top-left area of one canvas into another of the same
+     * colour mode, row by row.
+     */
+    private void copyCanvasContent(BufferedImage from, BufferedImage to) {
+        int w = Math.min(from.getWidth(), to.getWidth());
+        int h = Math.min(from.getHeight(), to.getHeight());
+        byte[] fromIndices = CanvasPalette.indicesOf(from);
+        if (fromIndices != null) {
+            PixelKernels.copyRect(fromIndices, 0, from.getWidth(),
+                CanvasPalette.indicesOf(to), 0, to.getWidth(), w, h);
+        } else if (PixelKernels.pixelsOf(from) == null || PixelKernels.pixelsOf(to) == null) {
+            // Moving to or from a disk-backed canvas
+            int[] row = new int[w];
+            for (int y = 0; y < h; y++) {
+                from.getRaster().getDataElements(0, y, w, 1, row);
+                to.getRaster().setDataElements(0, y, w, 1, row);
+            }
+        } else {
+            PixelKernels.copyRect(PixelKernels.pixelsOf(from), 0, from.getWidth(),
+                PixelKernels.pixelsOf(to), 0, to.getWidth(), w, h);
+        }
+    }
+
+    private boolean isIndexedCanvas() {
+        return canvasImage() != null && CanvasPalette.indicesOf(canvasImage()) != null;
+    }
+
+    private boolean isMappedCanvas() {
+        return canvasImage() != null && MappedCanvas.bufferOf(canvasImage()) != null;
+    }
+
+    /**
+     * Creates a blank canvas in the memory-mapped file, reusing the file if there is
+     * one. Falls back to the heap, leaving disk-backed mode, if the file cannot be
+     * mapped; returns null in that case.
+     */
+    private BufferedImage createMappedCanvasImage(int w, int h) {
+        detachClips();   // The file is rewritten from the start
+        try {
+            if (mappedCanvas == null) {
+                mappedCanvas = MappedCanvas.create();
             }
-            g2.dispose();
-            persistentImage = newImage;
+            BufferedImage image = mappedCanvas.resize(w, h);
+            fillCanvasBackground(image);
+            return image;
+        } catch (IOException e) {
+            System.out.println("Error mapping canvas file, using heap canvas: " + e.getMessage());
+            disposeMappedCanvas();
+            return null;
         }
     }
 
     /**
-     * Implements flood fill algorithm using queue-based approach.
+     * Resizes the memory-mapped canvas in place. Kept pixels stay where they are in
+     * the file, and only newly exposed areas are filled with the background.
+     */
+    private void resizeMappedCanvas(int w, int h) {
+        int oldW = canvasImage().getWidth(), oldH = canvasImage().getHeight();
+        detachClips();   // Rows may move within the file
+        BufferedImage resized;
+        try {
+            resized = mappedCanvas.resize(w, h);
+        } catch (IOException e) {
+            System.out.println("Error growing mapped canvas, using heap canvas: " + e.getMessage());
+            BufferedImage mapped = canvasImage();
+            diskBackedMode = false;
+            resourceManager.ensureHeadroom(canvasBytes(w, h));
+            BufferedImage heap = createCanvasImage(w, h);
+            copyCanvasContent(mapped, heap);
+            setCanvasImage(heap);
+            disposeMappedCanvas();
+            return;
+        }
+        setCanvasImage(resized);
+
+        MappedCanvas.MappedDataBuffer buffer = MappedCanvas.bufferOf(resized);
+        int stride = MappedCanvas.strideOf(resized);
+        int background = canvasBackgroundArgb();
+        buffer.fill(stride, oldW, 0, w - oldW, Math.min(oldH, h), background);
+        if (h > oldH) {
+            buffer.fill(stride, 0, oldH, w, h - oldH, background);
+        }
+    }
+
+    /**
+     * Composites a scene of the canvas size over the memory-mapped canvas a row at a time.
+     */
+    private void compositeOntoMappedCanvas(int[] scenePixels) {
+        MappedCanvas.MappedDataBuffer buffer = MappedCanvas.bufferOf(canvasImage());
+        int stride = MappedCanvas.strideOf(canvasImage());
+        int w = canvasImage().getWidth();
+        int[] row = new int[w];
+        for (int y = 0; y < canvasImage().getHeight(); y++) {
+            buffer.read(y * stride, row, 0, w);
+            PixelKernels.compositeOver(scenePixels, y * w, row, 0, w);
+            buffer.write(y * stride, row, 0, w);
+        }
+    }
+
+    private void disposeMappedCanvas() {
+        diskBackedMode = false;
+        if (mappedCanvas != null) {
+            mappedCanvas.dispose();
+            mappedCanvas = null;
+        }
+    }
+
+    /**
+     * Makes sure a colour can be drawn on the indexed canvas, growing the palette or,
+     * once it is full, promoting the canvas to ARGB.
+     */
+    private void ensureCanvasColor(Color color) {
+        if (!isIndexedCanvas()) return;
+        if (palette.ensure(color.getRGB()) < 0) {
+            promoteCanvasToArgb();
+        } else {
+            persistentImage = palette.rewrap(canvasImage());
+        }
+    }
+
+    /**
+     * Adds every colour used by the scene to the palette. Returns false if they do not
+     * all fit, or if the scene has antialiased baked history that needs full colour.
+     */
+    private boolean paletteCoversScene() {
+        if (drawingSystem.hasBakedHistory()) return false;
+        for (DrawingElement element : drawingSystem.snapshot()) {
+            if (palette.ensure(element.getStrokeColor().getRGB()) < 0) return false;
+            if (element instanceof ShapeElement && ((ShapeElement) element).isFilled()
+                    && palette.ensure(((ShapeElement) element).getFillColor().getRGB()) < 0) return false;
+        }
+        persistentImage = palette.rewrap(canvasImage());
+        return true;
+    }
+
+    /**
+     * Switches the canvas to 32-bit ARGB, expanding any indexed pixels.
+     */
+    private void promoteCanvasToArgb() {
+        if (isIndexedCanvas()) {
+            resourceManager.ensureHeadroom((long) canvasImage().getWidth() * canvasImage().getHeight() * 4);
+            setCanvasImage(palette.toArgb(canvasImage()));
+        }
+        indexedColorMode = false;
+        palette = null;
+    }
+
+    /**
+     * Scanline flood fill working directly on the canvas pixel array.
      * Fills connected areas of the same color with current stroke color.
      */
     private void performFloodFill(Point point) {
         switchToRasterModePreservingContent();
 
         // Bounds checking
-        if (point.x < 0 || point.x >= persistentImage.getWidth() || 
-            point.y < 0 || point.y >= persistentImage.getHeight()) return;
-
-        int targetColor = persistentImage.getRGB(point.x, point.y);
-        int fillColor = currentColor.getRGB();
-        if (targetColor == fillColor) return;
-
-        // Queue-based flood fill for better performance than recursive approach
-        Queue<Point> queue = new LinkedList<>();
-        queue.add(point);
+        int w = canvasImage().getWidth();
+        int h = canvasImage().getHeight();
+        if (point.x < 0 || point.x >= w || point.y < 0 || point.y >= h) return;
 
-        while (!queue.isEmpty()) {
-            Point p = queue.remove();
-            if (p.x < 0 || p.x >= persistentImage.getWidth() || 
-                p.y < 0 || p.y >= persistentImage.getHeight()) continue;
-            if (persistentImage.getRGB(p.x, p.y) != targetColor) continue;
-
-            persistentImage.setRGB(p.x, p.y, fillColor);
-            
-            // Add adjacent pixels (4-connected)
-            queue.add(new Point(p.x + 1, p.y));
-            queue.add(new Point(p.x - 1, p.y));
-            queue.add(new Point(p.x, p.y + 1));
-            queue.add(new Point(p.x, p.y - 1));
+        // Indexed canvases fill with palette indices; a new colour may grow or promote it
+        ensureCanvasColor(currentColor);
+        // Only clip tiles under a filled span need copying out, not the whole canvas
+        FloodFill.SpanListener listener = (x, y, length) -> beforeCanvasWrite(x, y, length, 1);
+        byte[] indices = CanvasPalette.indicesOf(canvasImage());
+        MappedCanvas.MappedDataBuffer mapped = MappedCanvas.bufferOf(canvasImage());
+        boolean changed;
+        if (indices != null) {
+            changed = FloodFill.fill(indices, w, h, point.x, point.y,
+                (byte) palette.indexOf(currentColor.getRGB()), listener);
+        } else if (mapped != null) {
+            changed = FloodFill.fill(mapped, MappedCanvas.strideOf(canvasImage()), w, h,
+                point.x, point.y, currentColor.getRGB(), fillTolerance, listener);
+        } else {
+            changed = FloodFill.fill(PixelKernels.pixelsOf(canvasImage()), w, h, point.x, point.y,
+                currentColor.getRGB(), fillTolerance, listener);
+        }
+        if (changed) {
+            repaint();
         }
-        repaint();
     }
 
     /**
-     * Erases content at point using circular brush scaled to stroke width.
+     * Starts a raster brush stroke for the current tool. The eraser paints the canvas
+     * background, or clears to transparency over a reference image.
      */
-    private void eraseAtPoint(Point point) {
-        if (persistentImage == null) return;
-        Graphics2D g2 = persistentImage.createGraphics();
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(Color.WHITE);
-        
-        // Scale eraser size to stroke width with minimum usability threshold
-        int eraserSize = Math.max(currentStrokeWidth * 2, 8);
-        g2.fillOval(point.x - eraserSize/2, point.y - eraserSize/2, eraserSize, eraserSize);
-        g2.dispose();
+    private void beginBrushStroke(Point point) {
+        if (canvasImage() == null) return;
+
+        if (currentTool.equals("Eraser")) {
+            // Scale eraser size to stroke width with minimum usability threshold
+            int eraserSize = Math.max(currentStrokeWidth * 2, 8);
+            int background = canvasBackgroundArgb();
+            if (isIndexedCanvas()) {
+                brush.begin(canvasImage(), eraserSize, BrushEngine.Mode.PAINT,
+                    palette.indexOf(background), point.x, point.y);
+            } else {
+                brush.begin(canvasImage(), eraserSize,
+                    (background == 0) ? BrushEngine.Mode.ERASE : BrushEngine.Mode.PAINT,
+                    background, point.x, point.y);
+            }
+        } else {
+            ensureCanvasColor(currentColor);  // May promote the canvas to ARGB
+            int argb = currentColor.getRGB();
+            brush.begin(canvasImage(), currentStrokeWidth, BrushEngine.Mode.PAINT,
+                isIndexedCanvas() ? palette.indexOf(argb) : argb, point.x, point.y);
+        }
     }
 
     /**
-     * Erases along drag path for smooth continuous erasing.
+     * Extends the brush stroke along the drag path, restarting it if the canvas
+     * image was replaced mid-stroke.
      */
-    private void eraseLineFromTo(Point from, Point to) {
-        if (persistentImage == null) return;
-        Graphics2D g2 = persistentImage.createGraphics();
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(Color.WHITE);
-        
-        // Scale eraser stroke to current stroke width
-        float eraserWidth = Math.max(currentStrokeWidth * 2.0f, 8.0f);
-        g2.setStroke(new BasicStroke(eraserWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2.drawLine(from.x, from.y, to.x, to.y);
-        g2.dispose();
+    private void continueBrushStroke(Point point) {
+        if (brush.isActiveOn(canvasImage())) {
+            brush.strokeTo(point.x, point.y);
+        } else if (canvasImage() != null && startPoint != null) {
+            beginBrushStroke(point);
+        }
     }
 
     /**
@@ -257,26 +676,146 @@ public class PaintPanel extends JPanel implements ComponentListener {
      * Clears all content and resets canvas to initial state.
      */
     public void clearAll() {
+        if (inputRecorder != null) inputRecorder.recordCommand("CLEAR");
+        stopTimelapsePlayback();
+        filterPreview = null;
+        filterSource = null;
+        floating = null;
+        regionSelection = null;
         drawingSystem.clear();
-        persistentImage = null;
+        setCanvasImage(null);
         isInRasterMode = false;
+        if (indexedColorMode) {
+            palette = new CanvasPalette();
+        }
         isActivelyDrawing = false;
         currentLine.clear();
         startPoint = null;
         endPoint = null;
+        clearSelection();
         repaint();
     }
 
+    /**
+     * Returns the index of the committed element under the point using the ID buffer,
+     * or -1 if there is none. Vector elements are flattened in raster mode, so nothing
+     * can be picked there.
+     */
+    private int pickElementAt(Point point) {
+        if (isInRasterMode) return -1;
+        pickingBuffer.sync(drawingSystem, getWidth(), getHeight());
+        return pickingBuffer.pick(point.x, point.y);
+    }
+
+    private void selectElementAt(Point point) {
+        int index = pickElementAt(point);
+        if (index != selectedIndex) {
+            repaintElementBounds(selectedIndex);
+            selectedIndex = index;
+            repaintElementBounds(selectedIndex);
+        }
+        dragAnchor = (selectedIndex >= 0) ? point : null;
+    }
+
+    private void updateHover(Point point) {
+        int index = pickElementAt(point);
+        if (index != hoveredIndex) {
+            repaintElementBounds(hoveredIndex);
+            hoveredIndex = index;
+            repaintElementBounds(hoveredIndex);
+        }
+    }
+
+    /**
+     * Drags the selected element, updating the ID buffer and screen only where it
+     * used to be and where it is now.
+     */
+    private void moveSelectionTo(Point point) {
+        if (selectedIndex < 0 || dragAnchor == null) return;
+        int dx = point.x - dragAnchor.x;
+        int dy = point.y - dragAnchor.y;
+        if (dx == 0 && dy == 0) return;
+
+        DrawingElement element = drawingSystem.getElement(selectedIndex);
+        DrawingElement moved = element.translated(dx, dy);
+        drawingSystem.replaceElement(selectedIndex, moved);
+        Rectangle dirty = element.getPaintBounds().union(moved.getPaintBounds());
+
+        // Keep derived rasters current without a full rebuild
+        pickingBuffer.redrawRegion(drawingSystem, dirty);
+        sceneCache.redrawRegion(drawingSystem, dirty);
+        dragAnchor = point;
+        repaint(dirty.x - 2, dirty.y - 2, dirty.width + 4, dirty.height + 4);
+    }
+
+    private void repaintElementBounds(int index) {
+        if (index < 0 || index >= drawingSystem.size()) return;
+        Rectangle bounds = drawingSystem.getElement(index).getPaintBounds();
+        repaint(bounds.x - 2, bounds.y - 2, bounds.width + 4, bounds.height + 4);
+    }
+
+    private void clearSelection() {
+        hoveredIndex = -1;
+        selectedIndex = -1;
+        dragAnchor = null;
+    }
+
+    /**
+     * Loads a reference image beneath the drawing. Only the header is read here;
+     * visible tiles are decoded in the background as they are needed.
+     */
+    public void importBackgroundImage(File file) throws IOException {
+        BackgroundImageLayer layer = new BackgroundImageLayer(file);
+        layer.zoomToFit(getWidth(), getHeight());
+        layer.setRepaintCallback(this::repaint);
+
+        if (backgroundLayer != null) {
+            resourceManager.unregister(backgroundLayer);
+            backgroundLayer.dispose();
+        }
+        backgroundLayer = layer;
+        resourceManager.register(layer);
+        // The trace cannot carry the image itself
+        if (inputRecorder != null) inputRecorder.recordNotReplayable("background image " + file.getName());
+        repaint();
+    }
+
+    /**
+     * Removes the reference image, leaving the drawing untouched.
+     */
+    public void removeBackgroundImage() {
+        if (inputRecorder != null) inputRecorder.recordCommand("REMOVE_BACKGROUND");
+        if (backgroundLayer != null) {
+            resourceManager.unregister(backgroundLayer);
+            backgroundLayer.dispose();
+            backgroundLayer = null;
+            repaint();
+        }
+    }
+
+    public boolean hasBackgroundImage() {
+        return backgroundLayer != null;
+    }
+
+    public ResourceManager getResourceManager() {
+        return resourceManager;
+    }
+
     /**
      * Draws Konami code easter egg emoji with sunglasses.
      */
     public void drawCoolEmoji() {
+        if (inputRecorder != null) inputRecorder.recordCommand("EMOJI");
         switchToRasterModePreservingContent();
-        Graphics2D g2 = persistentImage.createGraphics();
+        promoteCanvasToArgb();  // Gradients and translucent highlights need full colour
+        Graphics2D g2 = canvasImage().createGraphics();
         
         int centerX = getWidth() / 2;
         int centerY = getHeight() / 2;
         int size = Math.min(getWidth(), getHeight()) / 3;
+        // The face or the sunglasses arms, whichever is wider, plus the outline stroke
+        int reach = Math.max(size / 2, size / 4 + 30) + 4;
+        beforeCanvasWrite(centerX - reach, centerY - reach, 2 * reach, 2 * reach);
 
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
@@ -339,15 +878,57 @@ public class PaintPanel extends JPanel implements ComponentListener {
      */
     @Override
     protected void paintComponent(Graphics g) {
+        long frameStart = System.nanoTime();
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        renderQuality.applyHints(g2d);
 
-        // Render persistent content (raster or vector)
-        if (isInRasterMode && persistentImage != null) {
-            g2d.drawImage(persistentImage, 0, 0, null);
+        // Reference image sits beneath everything else
+        if (backgroundLayer != null) {
+            backgroundLayer.paint(g2d, g2d.getClipBounds());
+        }
+
+        if (playback != null) {
+            g2d.drawImage(playback.getCanvas(), 0, 0, null);
+            renderQuality.frameRendered(System.nanoTime() - frameStart);
+            return;
+        }
+
+        // Render persistent content (raster or vector) over the white panel background and reference
+        BufferedImage canvas = null;
+        if (isInRasterMode) {
+            try {
+                canvas = canvasImage();
+            } catch (IllegalStateException e) {
+                // Say so on screen instead of showing a blank canvas that looks like lost work
+                g2d.setColor(Color.RED);
+                g2d.drawString(e.getMessage(), 10, 20);
+                renderQuality.frameRendered(System.nanoTime() - frameStart);
+                return;
+            }
+        }
+        if (canvas != null) {
+            g2d.drawImage(canvas, 0, 0, null);
+        } else if (!renderQuality.isDraft()
+                || sceneCache.canSyncIncrementally(drawingSystem, getWidth(), getHeight())) {
+            // Only elements added since the last frame are rendered; the rest is a blit
+            g2d.drawImage(sceneCache.sync(drawingSystem, getWidth(), getHeight()), 0, 0, null);
         } else {
-            drawingSystem.renderAll(g2d, getWidth(), getHeight());
+            // A rebuild would miss the frame target, so draw simplified geometry directly
+            drawingSystem.renderElements(g2d, true);
+        }
+
+        // The filter preview already contains the canvas, scene and floating paste
+        if (filterPreview != null) {
+            Graphics2D preview = (Graphics2D) g2d.create();
+            preview.clip(filterRegion);
+            // Its unpainted pixels are transparent, so redraw what lies beneath the canvas
+            preview.setColor(getBackground());
+            preview.fill(filterRegion);
+            if (backgroundLayer != null) backgroundLayer.paint(preview, preview.getClipBounds());
+            preview.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            preview.drawImage(filterPreview, 0, 0, filterSource.getWidth(), filterSource.getHeight(), null);
+            preview.dispose();
         }
 
         // Real-time pencil feedback with current stroke width
@@ -383,23 +964,602 @@ public class PaintPanel extends JPanel implements ComponentListener {
                 g2d.draw(preview);
             }
         }
+
+        // Floating paste is blitted from its tiles; the marquee is a dashed outline
+        if (floating != null) {
+            if (filterPreview == null) floating.paint(g2d, floatingOrigin.x, floatingOrigin.y);
+            paintMarquee(g2d, new Rectangle(floatingOrigin.x, floatingOrigin.y,
+                floating.getWidth(), floating.getHeight()));
+        } else if (regionSelection != null) {
+            paintMarquee(g2d, regionSelection);
+        }
+
+        // Hover and selection outlines for the select tool
+        if (currentTool.equals("Select")) {
+            paintElementOutline(g2d, hoveredIndex, Color.LIGHT_GRAY);
+            paintElementOutline(g2d, selectedIndex, new Color(0, 120, 215));
+        }
+
+        renderQuality.frameRendered(System.nanoTime() - frameStart);
+    }
+
+    private void paintElementOutline(Graphics2D g2d, int index, Color color) {
+        if (index < 0 || index >= drawingSystem.size()) return;
+        Rectangle bounds = drawingSystem.getElement(index).getPaintBounds();
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(1.0f, BasicStroke.CAP_BUTT,
+            BasicStroke.JOIN_MITER, 10.0f, new float[]{4.0f}, 0.0f));
+        g2d.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
     }
 
     // Configuration setters
     public void setCurrentColor(Color color) { 
         this.currentColor = color; 
+        if (inputRecorder != null) inputRecorder.recordColor(color);
+        ensureCanvasColor(color);
     }
     
     public void setCurrentFillColor(Color color) { 
         this.currentFillColor = color; 
+        if (inputRecorder != null) inputRecorder.recordFillColor(color);
+        ensureCanvasColor(color);
+    }
+
+    /**
+     * Switches between the 8-bit indexed canvas and 32-bit ARGB. An existing ARGB
+     * canvas is only converted if its colours fit in the palette. A disk-backed canvas
+     * moves back onto the heap. Throws IllegalStateException with the reason if the
+     * mode cannot be changed, leaving the canvas as it was.
+     */
+    public void setIndexedColorMode(boolean enabled) {
+        if (enabled == indexedColorMode) return;
+        if (filterJob != null) {
+            throw new IllegalStateException("A filter is still being applied to the canvas.");
+        }
+
+        if (enabled) {
+            CanvasPalette newPalette = new CanvasPalette();
+            if (canvasImage() != null) {
+                BufferedImage converted = newPalette.fromArgb(canvasImage());
+                if (converted == null) {
+                    throw new IllegalStateException("The canvas uses more than " + CanvasPalette.MAX_ENTRIES
+                        + " colours and cannot be converted.");
+                }
+                setCanvasImage(converted);
+            }
+            disposeMappedCanvas();   // Indexed canvases live on the heap
+            palette = newPalette;
+            indexedColorMode = true;
+        } else {
+            promoteCanvasToArgb();
+        }
+        if (inputRecorder != null) inputRecorder.recordIndexedColorMode(enabled);
+        repaint();
+    }
+
+    public boolean isIndexedColorMode() {
+        return indexedColorMode;
+    }
+
+    /**
+     * Moves the canvas pixels into a memory-mapped temporary file, or back onto the
+     * heap. A disk-backed canvas is always ARGB and does not count against the heap.
+     * Throws IllegalStateException with the reason if the canvas cannot be moved,
+     * leaving it as it was.
+     */
+    public void setDiskBackedCanvas(boolean enabled) {
+        if (enabled == diskBackedMode) return;
+        if (filterJob != null) {
+            throw new IllegalStateException("A filter is still being applied to the canvas.");
+        }
+
+        if (enabled) {
+            BufferedImage mapped = null;
+            try {
+                mappedCanvas = MappedCanvas.create();
+                if (canvasImage() != null) {
+                    mapped = mappedCanvas.resize(canvasImage().getWidth(), canvasImage().getHeight());
+                }
+            } catch (IOException e) {
+                disposeMappedCanvas();
+                throw new IllegalStateException("The canvas file could not be mapped: " + e.getMessage(), e);
+            }
+            promoteCanvasToArgb();
+            diskBackedMode = true;
+            if (mapped != null) {
+                copyCanvasContent(canvasImage(), mapped);
+                setCanvasImage(mapped);
+            }
+        } else {
+            diskBackedMode = false;
+            if (canvasImage() != null) {
+                resourceManager.ensureHeadroom(canvasBytes(canvasImage().getWidth(), canvasImage().getHeight()));
+                BufferedImage heap = createCanvasImage(canvasImage().getWidth(), canvasImage().getHeight());
+                copyCanvasContent(canvasImage(), heap);
+                setCanvasImage(heap);
+            }
+            disposeMappedCanvas();
+        }
+        if (inputRecorder != null) inputRecorder.recordDiskBackedCanvas(enabled);
+        repaint();
+    }
+
+    public boolean isDiskBackedCanvas() {
+        return diskBackedMode;
     }
     
     public void setCurrentTool(String tool) { 
+        if (!tool.equals(currentTool)) {
+            anchorFloatingSelection();
+            regionSelection = null;
+        }
         this.currentTool = tool; 
+        if (inputRecorder != null) inputRecorder.recordTool(tool);
+        clearSelection();
+        repaint();
     }
     
     public void setStrokeWidth(int strokeWidth) { 
         this.currentStrokeWidth = Math.max(1, strokeWidth); 
+        if (inputRecorder != null) inputRecorder.recordStrokeWidth(currentStrokeWidth);
+    }
+
+    /**
+     * Sets how far, per channel, a fill may spread into neighbouring colours so it
+     * also covers antialiased edges. 0 fills exact matches only. Indexed canvases
+     * have no blended edges and always fill exact matches.
+     */
+    public void setFillTolerance(int tolerance) {
+        this.fillTolerance = Math.max(0, Math.min(255, tolerance));
+        if (inputRecorder != null) inputRecorder.recordFillTolerance(fillTolerance);
+    }
+
+    /**
+     * Starts writing a replayable input trace. The current tool settings and canvas
+     * size are recorded first so a replay starts from the same state.
+     */
+    public void startInputRecording(File file) throws IOException {
+        stopInputRecording();
+        inputRecorder = new InputRecorder(file);
+        inputRecorder.recordResize(getWidth(), getHeight());
+        inputRecorder.recordTool(currentTool);
+        inputRecorder.recordColor(currentColor);
+        inputRecorder.recordFillColor(currentFillColor);
+        inputRecorder.recordStrokeWidth(currentStrokeWidth);
+        inputRecorder.recordFillTolerance(fillTolerance);
+        inputRecorder.recordIndexedColorMode(indexedColorMode);
+        inputRecorder.recordDiskBackedCanvas(diskBackedMode);
+    }
+
+    public void stopInputRecording() {
+        if (inputRecorder != null) {
+            inputRecorder.close();
+            inputRecorder = null;
+        }
+    }
+
+    public boolean isRecordingInput() {
+        return inputRecorder != null;
+    }
+
+    /**
+     * Shows a low-resolution preview of the filter over the canvas, or over the given
+     * region of it if not null. The canvas itself is left alone: the preview is made
+     * from a composited snapshot, so cancelling does not flatten the scene, drop the
+     * floating paste or promote an indexed canvas. Cheap enough to call on every
+     * slider change.
+     */
+    public void previewFilter(CanvasFilter filter, Rectangle region) {
+        if (filterJob != null) return;
+        if (filterSource == null) {
+            filterSource = compositeCanvasSnapshot();
+        }
+        filterRegion = canvasRegion(region, filterSource.getWidth(), filterSource.getHeight());
+        filterPreview = getFilterRunner().preview(filterSource, filter, filterRegion);
+        repaint();
+    }
+
+    public void cancelFilterPreview() {
+        if (filterJob != null || filterPreview == null) return;
+        filterPreview = null;
+        filterSource = null;
+        repaint();
+    }
+
+    /**
+     * Returns the canvas as applying a filter would see it: the raster canvas, or the
+     * vector scene over the canvas background, with any floating paste on top. The
+     * raster canvas is returned as is when there is nothing to composite.
+     */
+    private BufferedImage compositeCanvasSnapshot() {
+        if (isInRasterMode && canvasImage() != null && floating == null) {
+            return canvasImage();   // The preview only reads it
+        }
+        int w = (isInRasterMode && canvasImage() != null) ? canvasImage().getWidth() : Math.max(getWidth(), 1);
+        int h = (isInRasterMode && canvasImage() != null) ? canvasImage().getHeight() : Math.max(getHeight(), 1);
+        BufferedImage snapshot = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = snapshot.createGraphics();
+        if (isInRasterMode && canvasImage() != null) {
+            g2.drawImage(canvasImage(), 0, 0, null);
+        } else {
+            PixelKernels.fill(PixelKernels.pixelsOf(snapshot), 0, w * h, canvasBackgroundArgb());
+            g2.drawImage(sceneCache.sync(drawingSystem, w, h), 0, 0, null);
+        }
+        if (floating != null) {
+            floating.paint(g2, floatingOrigin.x, floatingOrigin.y);
+        }
+        g2.dispose();
+        return snapshot;
+    }
+
+    /**
+     * Applies the filter at full resolution off the EDT. The preview stays up and
+     * drawing input is ignored until the result is swapped in as a whole. onFinished
+     * runs on the EDT with null on success, or the error. Returns false if a filter
+     * is already running.
+     */
+    public boolean applyFilter(CanvasFilter filter, Rectangle region, Consumer<Throwable> onFinished) {
+        if (filterJob != null) return false;
+        if (inputRecorder != null) inputRecorder.recordNotReplayable("filter " + filter.getName());
+        if (filterPreview == null) {
+            previewFilter(filter, region);
+        }
+        // Only a filter that is actually applied changes the canvas mode
+        prepareCanvasForFilter();
+        filterSource = null;
+        // A disk-backed canvas is filtered in place, a region at a time, instead of copied
+        boolean inPlace = isMappedCanvas();
+        Rectangle area = canvasRegion(region, canvasImage().getWidth(), canvasImage().getHeight());
+        filterRegion = area;
+        resourceManager.ensureHeadroom(inPlace ? (long) area.width * area.height * 12
+            : canvasBytes(canvasImage().getWidth(), canvasImage().getHeight()));
+
+        BufferedImage source = canvasImage();
+        filterJob = inPlace ? getFilterRunner().runRegion(source, filter, area)
+            : getFilterRunner().run(source, filter, area);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        filterJob.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            filterJob = null;
+            filterPreview = null;
+            setCursor(Cursor.getDefaultCursor());
+            // Nothing is committed if the canvas was cleared or replaced meanwhile
+            if (error == null && canvasImage() == source) {
+                if (inPlace) {
+                    beforeCanvasWrite(area.x, area.y, area.width, area.height);
+                    canvasImage().getRaster().setDataElements(area.x, area.y, result.getRaster());
+                } else {
+                    setCanvasImage(result);
+                }
+            }
+            if (resizePending) {
+                resizePending = false;
+                growCanvasToPanel();
+            }
+            repaint();
+            if (onFinished != null) onFinished.accept(error);
+        }));
+        return true;
+    }
+
+    public boolean isFilterRunning() {
+        return filterJob != null;
+    }
+
+    /**
+     * Filters need an ARGB raster, since they produce colours a palette cannot hold.
+     */
+    private void prepareCanvasForFilter() {
+        switchToRasterModePreservingContent();
+        anchorFloatingSelection();
+        promoteCanvasToArgb();
+    }
+
+    private Rectangle canvasRegion(Rectangle region, int width, int height) {
+        Rectangle canvas = new Rectangle(0, 0, width, height);
+        return (region != null) ? region.intersection(canvas) : canvas;
+    }
+
+    private FilterRunner getFilterRunner() {
+        if (filterRunner == null) {
+            filterRunner = new FilterRunner();
+        }
+        return filterRunner;
+    }
+
+    /**
+     * Press with the region tool: grab the floating paste if the press is on it,
+     * otherwise drop it onto the canvas and start a new marquee.
+     */
+    private void beginRegionGesture(Point point) {
+        switchToRasterModePreservingContent();
+        if (floating != null && new Rectangle(floatingOrigin.x, floatingOrigin.y,
+                floating.getWidth(), floating.getHeight()).contains(point)) {
+            floatingGrab = new Point(point.x - floatingOrigin.x, point.y - floatingOrigin.y);
+            return;
+        }
+        anchorFloatingSelection();
+        setRegionSelection(null);
+    }
+
+    private void continueRegionGesture(Point point) {
+        if (floating != null && floatingGrab != null) {
+            // Moving the paste repaints only where it was and where it is now
+            Rectangle old = new Rectangle(floatingOrigin.x, floatingOrigin.y, floating.getWidth(), floating.getHeight());
+            floatingOrigin = new Point(point.x - floatingGrab.x, point.y - floatingGrab.y);
+            Rectangle dirty = old.union(new Rectangle(floatingOrigin.x, floatingOrigin.y,
+                floating.getWidth(), floating.getHeight()));
+            repaint(dirty.x - 2, dirty.y - 2, dirty.width + 4, dirty.height + 4);
+        } else if (startPoint != null && canvasImage() != null) {
+            Rectangle marquee = new Rectangle(Math.min(startPoint.x, point.x), Math.min(startPoint.y, point.y),
+                Math.abs(point.x - startPoint.x), Math.abs(point.y - startPoint.y));
+            setRegionSelection(marquee.intersection(
+                new Rectangle(0, 0, canvasImage().getWidth(), canvasImage().getHeight())));
+        }
+    }
+
+    private void setRegionSelection(Rectangle region) {
+        Rectangle old = regionSelection;
+        regionSelection = (region != null && !region.isEmpty()) ? region : null;
+        if (old != null) repaint(old.x - 2, old.y - 2, old.width + 4, old.height + 4);
+        if (regionSelection != null) {
+            repaint(regionSelection.x - 2, regionSelection.y - 2, regionSelection.width + 4, regionSelection.height + 4);
+        }
+    }
+
+    private void paintMarquee(Graphics2D g2d, Rectangle area) {
+        g2d.setColor(Color.DARK_GRAY);
+        g2d.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+            10.0f, new float[]{4.0f}, 0.0f));
+        g2d.drawRect(area.x, area.y, area.width - 1, area.height - 1);
+    }
+
+    /**
+     * Copies the marquee region, or the floating paste, to the clipboard. The copy
+     * shares the canvas pixels, so it costs nothing until the canvas is drawn on.
+     */
+    public boolean copySelection() {
+        if (inputRecorder != null) inputRecorder.recordCommand("COPY");
+        if (floating != null) {
+            clipboard = floating;
+            return true;
+        }
+        return copyRegionToClipboard();
+    }
+
+    private boolean copyRegionToClipboard() {
+        if (regionSelection == null || canvasImage() == null) return false;
+        clipboard = RegionClip.copyOf(canvasImage(), regionSelection);
+        return clipboard != null;
+    }
+
+    /**
+     * Copies the marquee region to the clipboard and clears it to the canvas background.
+     */
+    public boolean cutSelection() {
+        if (inputRecorder != null) inputRecorder.recordCommand("CUT");
+        if (floating != null) {
+            clipboard = floating;
+            floating = null;
+            repaint();
+            return true;
+        }
+        if (filterJob != null || !copyRegionToClipboard()) return false;
+
+        Rectangle area = regionSelection;
+        beforeCanvasWrite(area.x, area.y, area.width, area.height);
+        int w = canvasImage().getWidth();
+        byte[] indices = CanvasPalette.indicesOf(canvasImage());
+        MappedCanvas.MappedDataBuffer mapped = MappedCanvas.bufferOf(canvasImage());
+        if (mapped != null) {
+            mapped.fill(MappedCanvas.strideOf(canvasImage()), area.x, area.y, area.width, area.height,
+                canvasBackgroundArgb());
+            repaint(area);
+            return true;
+        }
+        for (int y = area.y; y < area.y + area.height; y++) {
+            if (indices != null) {
+                PixelKernels.fill(indices, y * w + area.x, area.width, (byte) palette.indexOf(canvasBackgroundArgb()));
+            } else {
+                PixelKernels.fill(PixelKernels.pixelsOf(canvasImage()), y * w + area.x, area.width,
+                    canvasBackgroundArgb());
+            }
+        }
+        repaint(area);
+        return true;
+    }
+
+    /**
+     * Pastes the clipboard as a floating selection at the place it was copied from.
+     * It can be dragged with the region tool, and is drawn onto the canvas when the
+     * tool changes or a new marquee is started.
+     */
+    public boolean pasteClipboard() {
+        if (inputRecorder != null) inputRecorder.recordCommand("PASTE");
+        if (clipboard == null || filterJob != null) return false;
+        switchToRasterModePreservingContent();
+        anchorFloatingSelection();
+        setRegionSelection(null);
+        floating = clipboard;
+        floatingOrigin = clipboard.getSourceBounds().getLocation();
+        repaint();
+        return true;
+    }
+
+    /**
+     * Writes the floating paste into the canvas and ends it.
+     */
+    private void anchorFloatingSelection() {
+        if (floating == null || canvasImage() == null) {
+            floating = null;
+            return;
+        }
+        if (!floating.isCompatibleWith(canvasImage())) {
+            promoteCanvasToArgb();   // E.g. an ARGB clip pasted onto an indexed canvas
+        }
+        beforeCanvasWrite(floatingOrigin.x, floatingOrigin.y, floating.getWidth(), floating.getHeight());
+        floating.writeTo(canvasImage(), floatingOrigin.x, floatingOrigin.y);
+        floating = null;
+        floatingGrab = null;
+        repaint();
+    }
+
+    public boolean hasClipboard() {
+        return clipboard != null;
+    }
+
+    public Rectangle getRegionSelection() {
+        return (regionSelection != null) ? new Rectangle(regionSelection) : null;
+    }
+
+    /**
+     * Must run before canvas pixels in the area are changed in place, so clips that
+     * still share them copy out the tiles they need.
+     */
+    private void beforeCanvasWrite(int x, int y, int width, int height) {
+        if (persistentImage == null) return;   // A swapped-out canvas shares nothing with the clips
+        java.awt.image.DataBuffer buffer = persistentImage.getRaster().getDataBuffer();
+        if (clipboard != null) clipboard.beforeSourceWrite(buffer, x, y, width, height);
+        if (floating != null && floating != clipboard) floating.beforeSourceWrite(buffer, x, y, width, height);
+    }
+
+    /**
+     * Replaces the canvas image. Clips sharing the old pixel buffer take private
+     * copies, so the old canvas is not kept alive by them.
+     */
+    private void setCanvasImage(BufferedImage image) {
+        if (persistentImage != null && (image == null
+                || image.getRaster().getDataBuffer() != persistentImage.getRaster().getDataBuffer())) {
+            detachClips();
+        }
+        if (swappedCanvas != null) {
+            swappedCanvas.dispose();
+            swappedCanvas = null;
+        }
+        persistentImage = image;
+        canvasLastUse = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the canvas image, or null if there is none. A canvas compressed or
+     * spilled by the resource manager is restored first, so every use of the canvas,
+     * painting included, goes through here. Throws IllegalStateException if it cannot
+     * be read back; it then stays swapped out, so nothing is lost and a later call
+     * tries again.
+     */
+    private BufferedImage canvasImage() {
+        if (swappedCanvas != null) {
+            try {
+                persistentImage = swappedCanvas.get();
+            } catch (IOException e) {
+                throw new IllegalStateException("The canvas could not be restored: " + e.getMessage(), e);
+            }
+            swappedCanvas.dispose();
+            swappedCanvas = null;
+        }
+        canvasLastUse = System.currentTimeMillis();
+        return persistentImage;
+    }
+
+    /**
+     * Compresses a heap canvas nobody has used for idleMillis. Clips sharing its
+     * pixels take their own copies first, since the restored canvas is a new image.
+     * Returns the heap bytes saved.
+     */
+    private long compressCanvasIfIdle(long idleMillis) {
+        if (persistentImage == null || swappedCanvas != null
+                || System.currentTimeMillis() - canvasLastUse < idleMillis) return 0;
+        // Filters, previews and brush strokes hold on to the image itself
+        if (filterJob != null || filterPreview != null || brush.isActiveOn(persistentImage)) return 0;
+        if (PixelKernels.pixelsOf(persistentImage) == null && CanvasPalette.indicesOf(persistentImage) == null) {
+            return 0;   // Disk-backed canvases are paged out by the OS instead
+        }
+
+        detachClips();
+        SwappableRaster swapped = new SwappableRaster(persistentImage);
+        long saved = swapped.compressIfIdle(0);
+        if (saved <= 0) {
+            swapped.dispose();
+            return 0;
+        }
+        swappedCanvas = swapped;
+        persistentImage = null;
+        return saved;
+    }
+
+    private void detachClips() {
+        if (persistentImage == null) return;
+        java.awt.image.DataBuffer buffer = persistentImage.getRaster().getDataBuffer();
+        if (clipboard != null) clipboard.detach(buffer);
+        if (floating != null) floating.detach(buffer);
+    }
+
+    /**
+     * Returns the full drawing history in creation order, including baked elements and
+     * those flattened into the raster canvas. Fills, brush and eraser strokes are pixel
+     * edits, not elements, so they are not part of it.
+     */
+    public List<DrawingElement> getTimeline() throws IOException {
+        return drawingSystem.getTimeline();
+    }
+
+    /**
+     * Replays the drawing history on screen, adding a batch of elements per frame on
+     * top of the previous frame. Returns false if there is nothing to play back.
+     */
+    public boolean startTimelapsePlayback(Runnable onFinished) {
+        stopTimelapsePlayback();
+        List<DrawingElement> timeline;
+        try {
+            timeline = getTimeline();
+        } catch (IOException e) {
+            System.out.println("Error reading drawing history: " + e.getMessage());
+            return false;
+        }
+        if (timeline.isEmpty()) return false;
+
+        int elementsPerFrame = TimelapseRenderer.defaultElementsPerFrame(timeline.size());
+        playback = new TimelapseRenderer(timeline, getWidth(), getHeight(), canvasBackgroundArgb());
+        playbackFinished = (onFinished != null) ? onFinished : () -> {};
+        playbackTimer = new Timer(33, e -> {
+            if (!playback.hasNextFrame()) {
+                stopTimelapsePlayback();
+                return;
+            }
+            Rectangle changed = playback.advance(elementsPerFrame);
+            repaint(changed);
+        });
+        playbackTimer.start();
+        repaint();
+        return true;
+    }
+
+    public void stopTimelapsePlayback() {
+        if (playback == null) return;
+        playbackTimer.stop();
+        playback.dispose();
+        playback = null;
+        playbackTimer = null;
+        repaint();
+        Runnable finished = playbackFinished;
+        playbackFinished = () -> {};
+        finished.run();
+    }
+
+    public boolean isPlayingTimelapse() {
+        return playback != null;
+    }
+
+    /**
+     * Renders the canvas at full quality into a new image, as it would appear on screen.
+     */
+    public BufferedImage renderToImage() {
+        renderQuality.settle();
+        BufferedImage image = new BufferedImage(Math.max(getWidth(), 1), Math.max(getHeight(), 1),
+            BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        paint(g2);
+        g2.dispose();
+        return image;
     }
 
     /**
@@ -408,18 +1568,33 @@ public class PaintPanel extends JPanel implements ComponentListener {
      */
     @Override
     public void componentResized(ComponentEvent e) {
-        if (isInRasterMode && persistentImage != null) {
+        renderQuality.markInteraction();
+        if (inputRecorder != null) inputRecorder.recordResize(getWidth(), getHeight());
+        drawingSystem.ensureBaseCovers(getWidth(), getHeight());
+        growCanvasToPanel();
+    }
+
+    private void growCanvasToPanel() {
+        if (filterJob != null) {
+            // The running filter is still reading the canvas
+            resizePending = true;
+            return;
+        }
+        if (isInRasterMode && canvasImage() != null) {
             // Create expanded canvas that preserves all existing content
-            int newW = Math.max(getWidth(), persistentImage.getWidth());
-            int newH = Math.max(getHeight(), persistentImage.getHeight());
+            int newW = Math.max(getWidth(), canvasImage().getWidth());
+            int newH = Math.max(getHeight(), canvasImage().getHeight());
+            if (newW == canvasImage().getWidth() && newH == canvasImage().getHeight()) return;
+            if (isMappedCanvas()) {
+                // Grows within the file instead of copying into a new image
+                resizeMappedCanvas(newW, newH);
+                return;
+            }
+            resourceManager.ensureHeadroom(canvasBytes(newW, newH));
             
-            BufferedImage newImage = new BufferedImage(newW, newH, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = newImage.createGraphics();
-            g2d.setColor(Color.WHITE);
-            g2d.fillRect(0, 0, newW, newH);
-            g2d.drawImage(persistentImage, 0, 0, null);
-            g2d.dispose();
-            persistentImage = newImage;
+            BufferedImage newImage = createCanvasImage(newW, newH);
+            copyCanvasContent(canvasImage(), newImage);
+            setCanvasImage(newImage);
         }
     }
 
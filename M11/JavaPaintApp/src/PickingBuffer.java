@@ -0,0 +1,61 @@
+/**
+ * Offscreen ID buffer for constant-time hit testing of drawing elements.
+ * Every element is rendered in a flat color encoding its index, so the element
+ * under the cursor is found with a single pixel lookup instead of a geometry scan.
+ */
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class PickingBuffer extends SceneRaster {
+    /**
+     * Returns the index of the topmost element at the point, or -1 if there is none.
+     * Only valid after a sync.
+     */
+    public int pick(int x, int y) {
+        if (image == null || x < 0 || y < 0 || x >= image.getWidth() || y >= image.getHeight()) {
+            return -1;
+        }
+        int id = pixels[y * image.getWidth() + x] & 0xFFFFFF;
+        return id - 1;   // IDs are index + 1, so 0 means empty
+    }
+
+    @Override
+    public String getResourceName() {
+        return "Picking buffer";
+    }
+
+    @Override
+    protected int getImageType() {
+        return BufferedImage.TYPE_INT_RGB;
+    }
+
+    @Override
+    protected Graphics2D createRasterGraphics() {
+        Graphics2D g2 = image.createGraphics();
+        // Antialiasing would blend neighbouring IDs into meaningless colors
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        return g2;
+    }
+
+    @Override
+    protected void drawElement(Graphics2D g2d, DrawingElement element, int index) {
+        element.drawSilhouette(g2d, idColor(index));
+    }
+
+    @Override
+    protected void drawRegion(Graphics2D g2d, DrawingSystem drawingSystem) {
+        // Baked history has no IDs, so only live elements are drawn
+        Rectangle clip = g2d.getClipBounds();
+        for (int i = 0; i < drawingSystem.size(); i++) {
+            DrawingElement element = drawingSystem.getElement(i);
+            if (clip == null || clip.intersects(element.getPaintBounds())) {
+                element.drawSilhouette(g2d, idColor(i));
+            }
+        }
+    }
+
+    private static Color idColor(int index) {
+        return new Color((index + 1) & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * Bulk pixel kernels over packed int ARGB arrays (non-premultiplied, as stored by
+ * TYPE_INT_ARGB images). Loops are kept simple and branch-light so the JIT can
+ * unroll and, where possible, auto-vectorize them; fills and copies go through the
+ * intrinsified Arrays.fill and System.arraycopy.
+ *
+ * The masked compares also have explicit SIMD versions in
+ * VectorPixelKernels, written against the incubating Vector API. That class lives
+ * in src-vector and is compiled separately, and it is only loaded when the JVM was
+ * started with --add-modules jdk.incubator.vector; otherwise the scalar loops here
+ * are used.
+ */
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+public final class PixelKernels {
+    private static final int VECTOR_MIN_LENGTH = 32;   // Shorter runs are faster as scalar loops
+    private static final Accelerated VECTOR = loadVectorKernels();
+
+    private PixelKernels() {}
+
+    /**
+     * Kernels with a Vector API implementation. Each behaves exactly like the scalar
+     * method of the same name.
+     */
+    interface Accelerated {
+        int matchExact(int[] src, int offset, int length, int target, byte[] mask, int maskOffset);
+
+        int matchTolerance(int[] src, int offset, int length, int target, int tolerance,
+                           byte[] mask, int maskOffset);
+    }
+
+    /**
+     * Returns the Vector API kernels if the incubator module is present and the
+     * implementation class was built, or null to use the scalar code.
+     */
+    private static Accelerated loadVectorKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            return (Accelerated) Class.forName("VectorPixelKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Vector pixel kernels unavailable, using scalar code: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if the SIMD kernels are in use.
+     */
+    public static boolean isVectorized() {
+        return VECTOR != null;
+    }
+
+    /**
+     * Returns the backing pixel array of an int-packed image, or null if the image
+     * is stored some other way and callers must fall back to Java2D.
+     */
+    public static int[] pixelsOf(BufferedImage image) {
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getRaster().getParent() == null) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        return null;
+    }
+
+    public static void fill(int[] dst, int offset, int length, int argb) {
+        Arrays.fill(dst, offset, offset + length, argb);
+    }
+
+    /**
+     * Fills a clipped rectangle of an image laid out with the given row stride.
+     */
+    public static void fillRect(int[] dst, int stride, int height, int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(0, x), x1 = Math.min(stride, x + w);
+        int y0 = Math.max(0, y), y1 = Math.min(height, y + h);
+        if (x0 >= x1) return;
+        for (int row = y0; row < y1; row++) {
+            int start = row * stride;
+            Arrays.fill(dst, start + x0, start + x1, argb);
+        }
+    }
+
+    public static void copy(int[] src, int srcOffset, int[] dst, int dstOffset, int length) {
+        System.arraycopy(src, srcOffset, dst, dstOffset, length);
+    }
+
+    /**
+     * Copies a w x h block between images with different row strides.
+     */
+    public static void copyRect(int[] src, int srcOffset, int srcStride,
+                                int[] dst, int dstOffset, int dstStride, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(src, srcOffset + row * srcStride, dst, dstOffset + row * dstStride, w);
+        }
+    }
+
+    /**
+     * Writes 1 into mask for every pixel equal to target and 0 otherwise.
+     * Returns the number of matching pixels.
+     */
+    public static int matchExact(int[] src, int offset, int length, int target, byte[] mask, int maskOffset) {
+        if (VECTOR != null && length >= VECTOR_MIN_LENGTH) {
+            return VECTOR.matchExact(src, offset, length, target, mask, maskOffset);
+        }
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int match = (src[offset + i] == target) ? 1 : 0;
+            mask[maskOffset + i] = (byte) match;
+            count += match;
+        }
+        return count;
+    }
+
+    /**
+     * Like matchExact, but a pixel matches when every channel, alpha included, is
+     * within tolerance of the target.
+     */
+    public static int matchTolerance(int[] src, int offset, int length, int target, int tolerance,
+                                     byte[] mask, int maskOffset) {
+        if (VECTOR != null && length >= VECTOR_MIN_LENGTH) {
+            return VECTOR.matchTolerance(src, offset, length, target, tolerance, mask, maskOffset);
+        }
+        int ta = target >>> 24, tr = (target >> 16) & 0xFF, tg = (target >> 8) & 0xFF, tb = target & 0xFF;
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int p = src[offset + i];
+            int da = Math.abs((p >>> 24) - ta);
+            int dr = Math.abs(((p >> 16) & 0xFF) - tr);
+            int dg = Math.abs(((p >> 8) & 0xFF) - tg);
+            int db = Math.abs((p & 0xFF) - tb);
+            int match = (Math.max(Math.max(da, dr), Math.max(dg, db)) <= tolerance) ? 1 : 0;
+            mask[maskOffset + i] = (byte) match;
+            count += match;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first index in [from, limit) whose pixel differs from target,
+     * or limit if the whole run matches.
+     */
+    public static int runEnd(int[] src, int from, int limit, int target) {
+        int i = from;
+        while (i < limit && src[i] == target) i++;
+        return i;
+    }
+
+    /**
+     * Returns the lowest index at or above limit such that every pixel from there
+     * through from equals target; returns from + 1 if src[from] itself differs.
+     */
+    public static int runStart(int[] src, int from, int limit, int target) {
+        int i = from;
+        while (i >= limit && src[i] == target) i--;
+        return i + 1;
+    }
+
+    /**
+     * Expands 8-bit palette indices to ARGB through a 256-entry lookup table.
+     */
+    public static void expandIndexed(byte[] src, int srcOffset, int[] lut, int[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = lut[src[srcOffset + i] & 0xFF];
+        }
+    }
+
+    /**
+     * Maps ARGB pixels to palette indices through a 32768-entry table indexed by the
+     * top five bits of each colour channel. Alpha is ignored.
+     */
+    public static void quantize(int[] src, int srcOffset, byte[] lut555, byte[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            int p = src[srcOffset + i];
+            dst[dstOffset + i] = lut555[((p >> 9) & 0x7C00) | ((p >> 6) & 0x03E0) | ((p >> 3) & 0x001F)];
+        }
+    }
+
+    // 8-bit variants used by the indexed-colour canvas
+
+    public static void fill(byte[] dst, int offset, int length, byte index) {
+        Arrays.fill(dst, offset, offset + length, index);
+    }
+
+    public static void copyRect(byte[] src, int srcOffset, int srcStride,
+                                byte[] dst, int dstOffset, int dstStride, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(src, srcOffset + row * srcStride, dst, dstOffset + row * dstStride, w);
+        }
+    }
+
+    public static int matchExact(byte[] src, int offset, int length, byte target, byte[] mask, int maskOffset) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int match = (src[offset + i] == target) ? 1 : 0;
+            mask[maskOffset + i] = (byte) match;
+            count += match;
+        }
+        return count;
+    }
+
+    public static int runEnd(byte[] src, int from, int limit, byte target) {
+        int i = from;
+        while (i < limit && src[i] == target) i++;
+        return i;
+    }
+
+    public static int runStart(byte[] src, int from, int limit, byte target) {
+        int i = from;
+        while (i >= limit && src[i] == target) i--;
+        return i + 1;
+    }
+
+    /**
+     * Writes index wherever the mask is non-zero; indexed canvases have no blending.
+     */
+    public static void fillMasked(byte[] dst, int offset, int length, byte index, byte[] mask, int maskOffset) {
+        for (int i = 0; i < length; i++) {
+            if (mask[maskOffset + i] != 0) {
+                dst[offset + i] = index;
+            }
+        }
+    }
+
+    /**
+     * Composites src over dst (Porter-Duff SRC_OVER) for non-premultiplied ARGB.
+     */
+    public static void compositeOver(int[] src, int srcOffset, int[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = over(src[srcOffset + i], dst[dstOffset + i], 255);
+        }
+    }
+
+    /**
+     * Composites a solid color over dst, scaled per pixel by an 8-bit coverage mask.
+     * This is how antialiased brush dabs are applied.
+     */
+    public static void blendColor(int[] dst, int dstOffset, int length, int argb,
+                                  byte[] coverage, int coverageOffset) {
+        for (int i = 0; i < length; i++) {
+            int c = coverage[coverageOffset + i] & 0xFF;
+            if (c != 0) {
+                dst[dstOffset + i] = over(argb, dst[dstOffset + i], c);
+            }
+        }
+    }
+
+    /**
+     * Reduces dst alpha by an 8-bit coverage mask (DST_OUT), used to erase to
+     * transparency over a background image.
+     */
+    public static void eraseAlpha(int[] dst, int dstOffset, int length, byte[] coverage, int coverageOffset) {
+        for (int i = 0; i < length; i++) {
+            int c = coverage[coverageOffset + i] & 0xFF;
+            if (c != 0) {
+                int p = dst[dstOffset + i];
+                int a = ((p >>> 24) * (255 - c) + 127) / 255;
+                dst[dstOffset + i] = (a == 0) ? 0 : (a << 24) | (p & 0xFFFFFF);
+            }
+        }
+    }
+
+    /**
+     * Stroke-level variant of blendColor. strokeCoverage holds the highest coverage
+     * the stroke has given each pixel so far and before the pixel as it was when the
+     * stroke first reached it. A pixel is only recomposited, over its pre-stroke
+     * value, when a dab covers it more than before, so overlapping dabs of one stroke
+     * never compound a translucent colour.
+     */
+    public static void blendColorOnce(int[] dst, int dstOffset, int length, int argb,
+                                      byte[] coverage, int coverageOffset,
+                                      byte[] strokeCoverage, int[] before, int strokeOffset) {
+        for (int i = 0; i < length; i++) {
+            int c = coverage[coverageOffset + i] & 0xFF;
+            int s = strokeCoverage[strokeOffset + i] & 0xFF;
+            if (c > s) {
+                if (s == 0) before[strokeOffset + i] = dst[dstOffset + i];
+                strokeCoverage[strokeOffset + i] = (byte) c;
+                dst[dstOffset + i] = over(argb, before[strokeOffset + i], c);
+            }
+        }
+    }
+
+    /**
+     * Stroke-level variant of eraseAlpha, with the same bookkeeping as blendColorOnce.
+     */
+    public static void eraseAlphaOnce(int[] dst, int dstOffset, int length, byte[] coverage, int coverageOffset,
+                                      byte[] strokeCoverage, int[] before, int strokeOffset) {
+        for (int i = 0; i < length; i++) {
+            int c = coverage[coverageOffset + i] & 0xFF;
+            int s = strokeCoverage[strokeOffset + i] & 0xFF;
+            if (c > s) {
+                if (s == 0) before[strokeOffset + i] = dst[dstOffset + i];
+                strokeCoverage[strokeOffset + i] = (byte) c;
+                int p = before[strokeOffset + i];
+                int a = ((p >>> 24) * (255 - c) + 127) / 255;
+                dst[dstOffset + i] = (a == 0) ? 0 : (a << 24) | (p & 0xFFFFFF);
+            }
+        }
+    }
+
+    /**
+     * Single-pixel SRC_OVER of non-premultiplied colors, with the source alpha
+     * additionally scaled by coverage (0-255).
+     */
+    private static int over(int s, int d, int coverage) {
+        int sa = ((s >>> 24) * coverage + 127) / 255;
+        if (sa == 255) return s | 0xFF000000;
+        if (sa == 0) return d;
+
+        int da = d >>> 24;
+        int dWeight = da * (255 - sa) / 255;   // Destination contribution after source covers it
+        int outA = sa + dWeight;
+        if (outA == 0) return 0;
+
+        int r = (((s >> 16) & 0xFF) * sa + ((d >> 16) & 0xFF) * dWeight) / outA;
+        int g = (((s >> 8) & 0xFF) * sa + ((d >> 8) & 0xFF) * dWeight) / outA;
+        int b = ((s & 0xFF) * sa + (d & 0xFF) * dWeight) / outA;
+        return (outA << 24) | (r << 16) | (g << 8) | b;
+    }
+}
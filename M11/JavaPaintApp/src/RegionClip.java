@@ -0,0 +1,203 @@
+/**
+ * Rectangular block of canvas pixels for copy, cut and paste, with copy-on-write.
+ * A new clip is only a grid of child raster views onto the canvas, so copying is
+ * O(1) in the region size. Before the canvas is written, the canvas tells the clip,
+ * and only the tiles that overlap the write are copied out. Tiles nobody touches
+ * are never duplicated.
+ */
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+
+public class RegionClip {
+    private static final int TILE_SIZE = 64;
+
+    private final int width;
+    private final int height;
+    private final int sourceX;
+    private final int sourceY;
+    private final ColorModel colorModel;
+    private final int cols, rows;
+
+    // Tiles still backed by the canvas have no entry in ownTiles
+    private WritableRaster source;
+    private final WritableRaster[] ownTiles;
+    private final BufferedImage[] tileImages;   // Cached wrappers for painting
+    private int sharedCount;
+
+    private RegionClip(BufferedImage canvas, Rectangle region) {
+        this.width = region.width;
+        this.height = region.height;
+        this.sourceX = region.x;
+        this.sourceY = region.y;
+        this.colorModel = canvas.getColorModel();
+        this.cols = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.source = canvas.getRaster();
+        this.ownTiles = new WritableRaster[cols * rows];
+        this.tileImages = new BufferedImage[cols * rows];
+        this.sharedCount = cols * rows;
+    }
+
+    /**
+     * Returns a clip sharing the canvas pixels inside the region, or null if the
+     * region does not overlap the canvas.
+     */
+    public static RegionClip copyOf(BufferedImage canvas, Rectangle region) {
+        Rectangle area = region.intersection(new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()));
+        return area.isEmpty() ? null : new RegionClip(canvas, area);
+    }
+
+    /**
+     * Must be called before the canvas buffer is written in the given area. Shared
+     * tiles overlapping it are copied out first, so the clip keeps the old pixels.
+     */
+    public void beforeSourceWrite(DataBuffer buffer, int x, int y, int w, int h) {
+        if (source == null || buffer != source.getDataBuffer()) return;
+
+        int col0 = Math.max(0, Math.floorDiv(x - sourceX, TILE_SIZE));
+        int row0 = Math.max(0, Math.floorDiv(y - sourceY, TILE_SIZE));
+        int col1 = Math.min(cols - 1, Math.floorDiv(x + w - 1 - sourceX, TILE_SIZE));
+        int row1 = Math.min(rows - 1, Math.floorDiv(y + h - 1 - sourceY, TILE_SIZE));
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                materialize(col, row);
+            }
+        }
+    }
+
+    /**
+     * Copies out every shared tile, e.g. because the canvas buffer is being replaced
+     * and should not be kept alive by the clip.
+     */
+    public void detach(DataBuffer buffer) {
+        if (source == null || buffer != source.getDataBuffer()) return;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                materialize(col, row);
+            }
+        }
+    }
+
+    private void materialize(int col, int row) {
+        int index = row * cols + col;
+        if (ownTiles[index] != null) return;
+
+        WritableRaster view = sharedTile(col, row);
+        WritableRaster copy = view.createCompatibleWritableRaster();
+        copy.setRect(view);
+        ownTiles[index] = copy;
+        tileImages[index] = null;
+        if (--sharedCount == 0) {
+            source = null;   // Nothing references the canvas any more
+        }
+    }
+
+    private WritableRaster sharedTile(int col, int row) {
+        int x = col * TILE_SIZE, y = row * TILE_SIZE;
+        return source.createWritableChild(sourceX + x, sourceY + y,
+            Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y), 0, 0, null);
+    }
+
+    private WritableRaster tile(int col, int row) {
+        WritableRaster own = ownTiles[row * cols + col];
+        return (own != null) ? own : sharedTile(col, row);
+    }
+
+    private BufferedImage tileImage(int col, int row) {
+        int index = row * cols + col;
+        if (tileImages[index] == null) {
+            tileImages[index] = new BufferedImage(colorModel, tile(col, row), false, null);
+        }
+        return tileImages[index];
+    }
+
+    /**
+     * Draws the clip with its top-left corner at (x, y), straight from the shared or
+     * copied tiles.
+     */
+    public void paint(Graphics2D g2d, int x, int y) {
+        Rectangle clip = g2d.getClipBounds();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int tx = x + col * TILE_SIZE, ty = y + row * TILE_SIZE;
+                if (clip != null && !clip.intersects(tx, ty, TILE_SIZE, TILE_SIZE)) continue;
+                g2d.drawImage(tileImage(col, row), tx, ty, null);
+            }
+        }
+    }
+
+    /**
+     * Replaces the canvas pixels under the clip placed at (x, y). The caller must
+     * notify clips sharing the canvas before this write.
+     */
+    public void writeTo(BufferedImage canvas, int x, int y) {
+        boolean sameLayout = isCompatibleWith(canvas);
+        Graphics2D g2 = sameLayout ? null : canvas.createGraphics();
+        if (g2 != null) g2.setComposite(AlphaComposite.Src);
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int tx = x + col * TILE_SIZE, ty = y + row * TILE_SIZE;
+                if (sameLayout) {
+                    canvas.getRaster().setRect(tx, ty, tile(col, row));  // Clipped to the canvas
+                } else {
+                    g2.drawImage(tileImage(col, row), tx, ty, null);
+                }
+            }
+        }
+        if (g2 != null) g2.dispose();
+    }
+
+    /**
+     * Returns true if the clip's samples mean the same colours on the canvas, so they
+     * can be copied without conversion. Indexed clips need matching palette entries.
+     */
+    public boolean isCompatibleWith(BufferedImage canvas) {
+        ColorModel target = canvas.getColorModel();
+        if (canvas.getRaster().getTransferType() != source().getTransferType()) return false;
+        if (!(colorModel instanceof IndexColorModel)) {
+            return !(target instanceof IndexColorModel) && target.equals(colorModel);
+        }
+        if (!(target instanceof IndexColorModel)) return false;
+
+        IndexColorModel ours = (IndexColorModel) colorModel;
+        IndexColorModel theirs = (IndexColorModel) target;
+        if (theirs.getMapSize() < ours.getMapSize()) return false;
+        for (int i = 0; i < ours.getMapSize(); i++) {
+            if (ours.getRGB(i) != theirs.getRGB(i)) return false;
+        }
+        return true;
+    }
+
+    private WritableRaster source() {
+        return (source != null) ? source : ownTiles[0];
+    }
+
+    public Rectangle getSourceBounds() {
+        return new Rectangle(sourceX, sourceY, width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Heap used by tiles that have been copied out of the canvas.
+     */
+    public long getOwnedBytes() {
+        long bytesPerPixel = DataBuffer.getDataTypeSize(source().getTransferType()) / 8;
+        long total = 0;
+        for (WritableRaster tile : ownTiles) {
+            if (tile != null) total += (long) tile.getWidth() * tile.getHeight() * bytesPerPixel;
+        }
+        return total;
+    }
+}
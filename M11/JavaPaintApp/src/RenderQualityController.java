@@ -0,0 +1,125 @@
+/**
+ * Chooses between draft and full rendering quality for a component.
+ * While the user drags, pans or resizes, frames that miss the frame-time target
+ * switch rendering to speed-oriented hints and simplified geometry. Once input has
+ * been idle briefly, the visible area is repainted progressively, band by band,
+ * at full antialiased quality.
+ */
+import javax.swing.*;
+import java.awt.*;
+
+public class RenderQualityController {
+    private static final long FRAME_TARGET_NANOS = 16_000_000;  // ~60 fps
+    private static final int IDLE_DELAY_MS = 150;
+    private static final int REFINE_BAND_HEIGHT = 96;
+
+    private final JComponent target;
+    private final Timer idleTimer;
+    private final Timer refineTimer;
+
+    private boolean interacting = false;
+    private boolean draft = false;          // Set once an interactive frame misses the target
+    private boolean draftFramesShown = false;
+    private Rectangle refineArea = null;
+    private int refineY = 0;
+    private long lastFrameNanos = 0;
+
+    public RenderQualityController(JComponent target) {
+        this.target = target;
+
+        idleTimer = new Timer(IDLE_DELAY_MS, e -> interactionEnded());
+        idleTimer.setRepeats(false);
+
+        refineTimer = new Timer(1, e -> refineNextBand());
+        refineTimer.setRepeats(true);
+    }
+
+    /**
+     * Records user input that is actively changing the view.
+     */
+    public void markInteraction() {
+        interacting = true;
+        refineTimer.stop();
+        refineArea = null;
+        idleTimer.restart();
+    }
+
+    /**
+     * True when the next frame should be rendered with speed-oriented settings.
+     */
+    public boolean isDraft() {
+        return interacting && draft;
+    }
+
+    /**
+     * Configures rendering hints for the current quality level.
+     */
+    public void applyHints(Graphics2D g2d) {
+        if (isDraft()) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        } else {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+    }
+
+    /**
+     * Reports how long the last frame took so quality can follow the frame-time target.
+     */
+    public void frameRendered(long nanos) {
+        lastFrameNanos = nanos;
+        if (!interacting) return;
+
+        if (isDraft()) {
+            draftFramesShown = true;
+        } else if (nanos > FRAME_TARGET_NANOS) {
+            // Full quality is too slow for this scene; drop to draft until input settles
+            draft = true;
+        }
+    }
+
+    /**
+     * Ends any interaction immediately and returns to full quality, e.g. before
+     * rendering an image that must not depend on input timing.
+     */
+    public void settle() {
+        idleTimer.stop();
+        refineTimer.stop();
+        refineArea = null;
+        interacting = false;
+        draft = false;
+        draftFramesShown = false;
+    }
+
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    private void interactionEnded() {
+        interacting = false;
+        draft = false;
+        if (!draftFramesShown) return;
+
+        // Replace draft pixels progressively, top to bottom
+        draftFramesShown = false;
+        refineArea = target.getVisibleRect();
+        refineY = refineArea.y;
+        refineTimer.start();
+    }
+
+    private void refineNextBand() {
+        if (refineArea == null || refineY >= refineArea.y + refineArea.height) {
+            refineTimer.stop();
+            refineArea = null;
+            return;
+        }
+        int band = Math.min(REFINE_BAND_HEIGHT, refineArea.y + refineArea.height - refineY);
+        target.paintImmediately(refineArea.x, refineY, refineArea.width, band);
+        refineY += band;
+    }
+}
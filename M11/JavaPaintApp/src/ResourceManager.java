@@ -0,0 +1,118 @@
+/**
+ * Tracks estimated heap use of every canvas resource and enforces a memory budget.
+ * When the budget is exceeded, resources are asked to release memory in order of
+ * increasing cost: evict caches first, then compress idle rasters, then spill to disk.
+ */
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ResourceManager {
+    private static final long IDLE_MILLIS = 10_000;  // Rasters untouched this long may be compressed
+
+    private final List<ManagedResource> resources = new CopyOnWriteArrayList<>();
+    private long budgetBytes;
+
+    public ResourceManager(long budgetBytes) {
+        setBudget(budgetBytes);
+    }
+
+    /**
+     * Default budget: half the maximum heap, overridable in megabytes with the
+     * paintapp.memoryBudgetMB system property.
+     */
+    public static long defaultBudget() {
+        long configured = Long.getLong("paintapp.memoryBudgetMB", -1);
+        if (configured > 0) {
+            return configured * 1024 * 1024;
+        }
+        return Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    public void register(ManagedResource resource) {
+        if (resource != null && !resources.contains(resource)) {
+            resources.add(resource);
+        }
+    }
+
+    public void unregister(ManagedResource resource) {
+        resources.remove(resource);
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (ManagedResource resource : resources) {
+            total += resource.getEstimatedBytes();
+        }
+        return total;
+    }
+
+    public long getTotalDiskBytes() {
+        long total = 0;
+        for (ManagedResource resource : resources) {
+            total += resource.getDiskBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the estimated heap bytes of each resource in registration order.
+     */
+    public Map<String, Long> getBytesByResource() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (ManagedResource resource : resources) {
+            totals.merge(resource.getResourceName(), resource.getEstimatedBytes(), Long::sum);
+        }
+        return totals;
+    }
+
+    /**
+     * Releases memory until the tracked total fits the budget, cheapest step first.
+     * Returns the number of bytes freed.
+     */
+    public long enforceBudget() {
+        return releaseDownTo(budgetBytes);
+    }
+
+    /**
+     * Makes room for an allocation that is about to happen, e.g. a larger canvas.
+     */
+    public long ensureHeadroom(long upcomingBytes) {
+        return releaseDownTo(budgetBytes - upcomingBytes);
+    }
+
+    private long releaseDownTo(long target) {
+        long total = getTotalBytes();
+        long freed = 0;
+
+        for (int stage = 0; stage < 3 && total > target; stage++) {
+            for (ManagedResource resource : resources) {
+                if (total <= target) break;
+                long released;
+                switch (stage) {
+                    case 0:
+                        released = resource.evictCaches();
+                        break;
+                    case 1:
+                        released = resource.compressIdle(IDLE_MILLIS);
+                        break;
+                    default:
+                        released = resource.spillToDisk();
+                        break;
+                }
+                total -= released;
+                freed += released;
+            }
+        }
+        return freed;
+    }
+
+    public void setBudget(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+    }
+
+    public long getBudget() {
+        return budgetBytes;
+    }
+}
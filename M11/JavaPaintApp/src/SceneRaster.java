@@ -0,0 +1,119 @@
+/**
+ * Offscreen raster derived from the drawing scene and kept in step with it lazily.
+ * The raster remembers the scene version and element count it was last synced at.
+ * If elements have only been appended since then, a sync draws just the new ones;
+ * any other change rebuilds it from scratch. Subclasses decide how elements are drawn.
+ */
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public abstract class SceneRaster implements ManagedResource {
+    protected BufferedImage image = null;
+    protected int[] pixels = null;
+    private long syncedVersion = -1;
+    private int renderedCount = 0;  // Elements [0, renderedCount) are already drawn
+
+    /**
+     * Brings the raster up to date with the drawing system and returns it.
+     */
+    public BufferedImage sync(DrawingSystem drawingSystem, int width, int height) {
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, getImageType());
+            pixels = PixelKernels.pixelsOf(image);
+            renderedCount = 0;
+            drawScene(drawingSystem);
+        } else if (!drawingSystem.isAppendOnlySince(syncedVersion)) {
+            PixelKernels.fill(pixels, 0, pixels.length, 0);
+            renderedCount = 0;
+            drawScene(drawingSystem);
+        } else if (renderedCount < drawingSystem.size()) {
+            Graphics2D g2 = createRasterGraphics();
+            for (int i = renderedCount; i < drawingSystem.size(); i++) {
+                drawElement(g2, drawingSystem.getElement(i), i);
+            }
+            g2.dispose();
+        }
+
+        renderedCount = drawingSystem.size();
+        syncedVersion = drawingSystem.getVersion();
+        return image;
+    }
+
+    /**
+     * Returns true if a sync at this size would only draw appended elements.
+     */
+    public boolean canSyncIncrementally(DrawingSystem drawingSystem, int width, int height) {
+        return image != null && image.getWidth() == Math.max(width, 1) && image.getHeight() == Math.max(height, 1)
+            && drawingSystem.isAppendOnlySince(syncedVersion);
+    }
+
+    /**
+     * Re-renders only the given region after a single in-place edit, e.g. the old and
+     * new bounds of a moved element. If the raster was not current just before the
+     * edit it is left alone, and the next sync rebuilds it.
+     */
+    public void redrawRegion(DrawingSystem drawingSystem, Rectangle region) {
+        if (image == null || syncedVersion != drawingSystem.getVersion() - 1
+                || renderedCount != drawingSystem.size()) {
+            return;
+        }
+
+        PixelKernels.fillRect(pixels, image.getWidth(), image.getHeight(),
+            region.x, region.y, region.width, region.height, 0);
+        Graphics2D g2 = createRasterGraphics();
+        g2.setClip(region);
+        drawRegion(g2, drawingSystem);
+        g2.dispose();
+        syncedVersion = drawingSystem.getVersion();
+    }
+
+    /**
+     * Drops the raster contents; the next sync renders everything again.
+     */
+    public void invalidate() {
+        if (pixels != null) {
+            PixelKernels.fill(pixels, 0, pixels.length, 0);
+        }
+        renderedCount = 0;
+        syncedVersion = -1;
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return (image != null) ? (long) image.getWidth() * image.getHeight() * 4 : 0;
+    }
+
+    /**
+     * The raster is fully derived from the scene, so it can always be dropped
+     * and rebuilt on the next sync.
+     */
+    @Override
+    public long evictCaches() {
+        long freed = getEstimatedBytes();
+        image = null;
+        pixels = null;
+        renderedCount = 0;
+        syncedVersion = -1;
+        return freed;
+    }
+
+    private void drawScene(DrawingSystem drawingSystem) {
+        Graphics2D g2 = createRasterGraphics();
+        drawRegion(g2, drawingSystem);
+        g2.dispose();
+    }
+
+    /** An int-packed image type, so pixels can be cleared through PixelKernels. */
+    protected abstract int getImageType();
+
+    protected abstract Graphics2D createRasterGraphics();
+
+    /** Draws one newly appended element. */
+    protected abstract void drawElement(Graphics2D g2d, DrawingElement element, int index);
+
+    /** Draws everything in the scene that intersects the graphics clip, if any. */
+    protected abstract void drawRegion(Graphics2D g2d, DrawingSystem drawingSystem);
+}
@@ -0,0 +1,36 @@
+/**
+ * Full-quality rendering of the vector scene on a transparent background.
+ * Repaints blit it instead of drawing every element again, and it is the source
+ * the canvas is filled from when the drawing switches to raster mode.
+ */
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class SceneRenderCache extends SceneRaster {
+    @Override
+    public String getResourceName() {
+        return "Scene render cache";
+    }
+
+    @Override
+    protected int getImageType() {
+        return BufferedImage.TYPE_INT_ARGB;
+    }
+
+    @Override
+    protected Graphics2D createRasterGraphics() {
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return g2;
+    }
+
+    @Override
+    protected void drawElement(Graphics2D g2d, DrawingElement element, int index) {
+        element.draw(g2d);
+    }
+
+    @Override
+    protected void drawRegion(Graphics2D g2d, DrawingSystem drawingSystem) {
+        drawingSystem.renderElements(g2d);
+    }
+}
@@ -4,6 +4,8 @@
 import java.awt.*;
 
 public class ShapeElement extends DrawingElement {
+    private static final long serialVersionUID = 1L;
+    
     private Shape shape;
     private Color fillColor;
     private boolean isFilled;
@@ -49,6 +51,41 @@ public class ShapeElement extends DrawingElement {
         g2d.draw(shape);
     }
     
+    @Override
+    public void drawSilhouette(Graphics2D g2d, Color color) {
+        g2d.setColor(color);
+        if (isFilled) {
+            g2d.fill(shape);
+        }
+        g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2d.draw(shape);
+    }
+    
+    @Override
+    public Rectangle getPaintBounds() {
+        return padForStroke(shape.getBounds());
+    }
+    
+    @Override
+    public DrawingElement translated(int dx, int dy) {
+        Shape moved;
+        if (shape instanceof java.awt.geom.RectangularShape) {
+            // Keep the concrete shape type, so the copy stays cheap to draw and pick
+            java.awt.geom.RectangularShape r = (java.awt.geom.RectangularShape) ((java.awt.geom.RectangularShape) shape).clone();
+            r.setFrame(r.getX() + dx, r.getY() + dy, r.getWidth(), r.getHeight());
+            moved = r;
+        } else {
+            moved = java.awt.geom.AffineTransform.getTranslateInstance(dx, dy).createTransformedShape(shape);
+        }
+        return new ShapeElement(moved, strokeColor, fillColor, isFilled, strokeWidth);
+    }
+    
+    @Override
+    public long estimateMemoryBytes() {
+        // Shape geometry plus fill color; transformed shapes are paths and somewhat larger
+        return super.estimateMemoryBytes() + (shape instanceof java.awt.geom.Path2D ? 256 : 64);
+    }
+    
     public Color getFillColor() {
         return fillColor;
     }
@@ -0,0 +1,37 @@
+/**
+ * Unsharp mask: pushes each pixel away from its Gaussian-blurred neighbourhood,
+ * scaled by amount. Alpha is left unchanged.
+ */
+public class SharpenFilter extends GaussianBlurFilter {
+    private final double amount;
+    private final int amountFixed;   // amount in 8.8 fixed point
+
+    public SharpenFilter(double radius, double amount) {
+        super(radius);
+        this.amount = Math.max(0, amount);
+        this.amountFixed = (int) Math.round(this.amount * 256);
+    }
+
+    @Override
+    protected int combine(int original, int blurred) {
+        int r = sharpen((original >> 16) & 0xFF, (blurred >> 16) & 0xFF);
+        int g = sharpen((original >> 8) & 0xFF, (blurred >> 8) & 0xFF);
+        int b = sharpen(original & 0xFF, blurred & 0xFF);
+        return (original & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+
+    private int sharpen(int original, int blurred) {
+        int value = original + (((original - blurred) * amountFixed) >> 8);
+        return Math.min(255, Math.max(0, value));
+    }
+
+    @Override
+    public CanvasFilter scaled(double factor) {
+        return new SharpenFilter(getRadius() * factor, amount);
+    }
+
+    @Override
+    public String getName() {
+        return "Sharpen";
+    }
+}
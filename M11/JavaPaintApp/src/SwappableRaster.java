@@ -0,0 +1,163 @@
+/**
+ * Raster that can be compressed in memory or spilled to a temporary file while
+ * idle, and is transparently restored the next time it is accessed. Handles int
+ * ARGB images and 8-bit indexed ones; the restored image has the same colour model.
+ */
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class SwappableRaster {
+    private final int width;
+    private final int height;
+    private final ColorModel colorModel;
+    private final boolean indexed;
+    private BufferedImage image;
+    private byte[] compressed = null;
+    private File spillFile = null;
+    private long lastAccess = System.currentTimeMillis();
+
+    public SwappableRaster(BufferedImage image) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.colorModel = image.getColorModel();
+        this.indexed = image.getRaster().getDataBuffer() instanceof DataBufferByte;
+    }
+
+    /**
+     * Returns the live image, decompressing or reloading it first if needed. If the
+     * pixels cannot be read back, the compressed data and spill file are kept so a
+     * later call can try again, and the error is thrown to the caller.
+     */
+    public synchronized BufferedImage get() throws IOException {
+        lastAccess = System.currentTimeMillis();
+        if (image == null) {
+            byte[] data = (compressed != null) ? compressed : Files.readAllBytes(spillFile.toPath());
+            image = inflate(data);
+            compressed = null;
+            deleteSpillFile();
+        }
+        return image;
+    }
+
+    /**
+     * Compresses the pixels in memory if the raster has been idle long enough.
+     * Returns the heap bytes saved.
+     */
+    public synchronized long compressIfIdle(long idleMillis) {
+        if (image == null || System.currentTimeMillis() - lastAccess < idleMillis) return 0;
+        try {
+            compressed = deflate(image);
+        } catch (IOException e) {
+            System.out.println("Error compressing raster: " + e.getMessage());
+            return 0;
+        }
+        long saved = getRawBytes() - compressed.length;
+        image = null;
+        return saved;
+    }
+
+    /**
+     * Writes compressed pixels to a temporary file, freeing them from the heap.
+     * Only rasters that are already compressed are spilled. Returns the heap bytes saved.
+     */
+    public synchronized long spill() {
+        if (compressed == null) return 0;
+        try {
+            spillFile = File.createTempFile("paint-raster", ".bin");
+            spillFile.deleteOnExit();
+            Files.write(spillFile.toPath(), compressed);
+        } catch (IOException e) {
+            System.out.println("Error spilling raster to disk: " + e.getMessage());
+            deleteSpillFile();
+            return 0;
+        }
+        long saved = compressed.length;
+        compressed = null;
+        return saved;
+    }
+
+    public synchronized long getHeapBytes() {
+        if (image != null) return getRawBytes();
+        return (compressed != null) ? compressed.length : 0;
+    }
+
+    public synchronized long getDiskBytes() {
+        return (spillFile != null) ? spillFile.length() : 0;
+    }
+
+    public synchronized void dispose() {
+        image = null;
+        compressed = null;
+        deleteSpillFile();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private long getRawBytes() {
+        return (long) width * height * (indexed ? 1 : 4);
+    }
+
+    private BufferedImage createImage() {
+        return new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(width, height),
+            colorModel.isAlphaPremultiplied(), null);
+    }
+
+    private void deleteSpillFile() {
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Deflates the pixels row by row so no second full-size buffer is needed.
+     */
+    private byte[] deflate(BufferedImage source) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(buffer, deflater), 1 << 16))) {
+            if (indexed) {
+                out.write(((DataBufferByte) source.getRaster().getDataBuffer()).getData(), 0, width * height);
+            } else {
+                int[] pixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+                for (int i = 0; i < width * height; i++) {
+                    out.writeInt(pixels[i]);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+
+    private BufferedImage inflate(byte[] data) throws IOException {
+        BufferedImage restored = createImage();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(data)), 1 << 16))) {
+            if (indexed) {
+                in.readFully(((DataBufferByte) restored.getRaster().getDataBuffer()).getData());
+            } else {
+                int[] pixels = ((DataBufferInt) restored.getRaster().getDataBuffer()).getData();
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = in.readInt();
+                }
+            }
+        }
+        return restored;
+    }
+}
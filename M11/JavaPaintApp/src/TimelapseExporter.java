@@ -0,0 +1,386 @@
+/**
+ * Exports a drawing timeline as a timelapse, either as a numbered PNG sequence or
+ * as a looping animated GIF.
+ * Frames are rendered incrementally on the calling thread and handed to a pool of
+ * encoder threads through a small set of reusable frame buffers. GIF frames are
+ * quantized in parallel and then written in order by a single writer thread, each
+ * one covering only the region that changed since the previous frame.
+ * Run main() to export headlessly from a recorded input trace.
+ */
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntConsumer;
+
+public class TimelapseExporter {
+    private static final String GIF_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final int BUFFERS_PER_WORKER = 2;
+
+    // Web-safe colour cube plus greys, shared by all GIF frames
+    private static final IndexColorModel GIF_PALETTE = (IndexColorModel)
+        new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_INDEXED).getColorModel();
+    private static byte[] gifLookup = null;
+
+    private final List<DrawingElement> timeline;
+    private final int width;
+    private final int height;
+    private int elementsPerFrame;
+    private int frameDelayMillis = 40;
+    private int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private IntConsumer progressListener = frame -> {};
+
+    public TimelapseExporter(List<DrawingElement> timeline, int width, int height) {
+        this.timeline = timeline;
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        this.elementsPerFrame = TimelapseRenderer.defaultElementsPerFrame(timeline.size());
+    }
+
+    public void setElementsPerFrame(int elementsPerFrame) {
+        this.elementsPerFrame = Math.max(1, elementsPerFrame);
+    }
+
+    public void setFrameDelayMillis(int frameDelayMillis) {
+        this.frameDelayMillis = Math.max(10, frameDelayMillis);
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = Math.max(1, workerCount);
+    }
+
+    /**
+     * Called from the writer thread with the number of frames written so far.
+     */
+    public void setProgressListener(IntConsumer progressListener) {
+        this.progressListener = (progressListener != null) ? progressListener : frame -> {};
+    }
+
+    public int getFrameCount() {
+        return (timeline.size() + elementsPerFrame - 1) / elementsPerFrame;
+    }
+
+    /**
+     * Writes frame_00001.png, frame_00002.png, ... into the directory.
+     * Returns the number of frames written.
+     */
+    public int exportPngSequence(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+        return runPipeline(new FrameEncoder<Void>() {
+            @Override
+            public Void encode(BufferedImage frame, Rectangle changed, int index) throws IOException {
+                File file = new File(directory, String.format("frame_%05d.png", index + 1));
+                if (!ImageIO.write(frame, "png", file)) {
+                    throw new IOException("No PNG encoder available");
+                }
+                return null;
+            }
+
+            @Override
+            public void write(Void encoded, int index) {
+            }
+        });
+    }
+
+    /**
+     * Writes a looping animated GIF. Returns the number of frames written.
+     */
+    public int exportGif(File file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace file: " + file);
+        }
+        ImageOutputStream output = ImageIO.createImageOutputStream(file);
+        if (output == null) {
+            throw new IOException("Cannot write file: " + file);
+        }
+
+        byte[] lookup = getGifLookup();
+        try {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            int frames = runPipeline(new FrameEncoder<GifFrame>() {
+                @Override
+                public GifFrame encode(BufferedImage frame, Rectangle changed, int index) {
+                    // Only the changed region is stored; earlier frames show through the rest
+                    Rectangle region = (index == 0) ? new Rectangle(0, 0, width, height) : changed;
+                    if (region.isEmpty()) region = new Rectangle(0, 0, 1, 1);
+
+                    BufferedImage indexed = new BufferedImage(region.width, region.height,
+                        BufferedImage.TYPE_BYTE_INDEXED, GIF_PALETTE);
+                    byte[] dst = CanvasPalette.indicesOf(indexed);
+                    int[] src = PixelKernels.pixelsOf(frame);
+                    for (int row = 0; row < region.height; row++) {
+                        PixelKernels.quantize(src, (region.y + row) * width + region.x, lookup,
+                            dst, row * region.width, region.width);
+                    }
+                    return new GifFrame(indexed, region.x, region.y);
+                }
+
+                @Override
+                public void write(GifFrame encoded, int index) throws IOException {
+                    IIOMetadata metadata = createGifMetadata(writer, encoded, index == 0);
+                    writer.writeToSequence(new IIOImage(encoded.image, null, metadata), null);
+                }
+            });
+            writer.endWriteSequence();
+            return frames;
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+    }
+
+    /**
+     * Renders every frame and streams it through the encoder. At most a fixed number
+     * of frames are in flight, so memory use does not grow with the timeline length.
+     */
+    private <T> int runPipeline(FrameEncoder<T> encoder) throws IOException {
+        int frames = getFrameCount();
+        TimelapseRenderer renderer = new TimelapseRenderer(timeline, width, height, Color.WHITE.getRGB());
+        int bufferCount = workerCount * BUFFERS_PER_WORKER;
+        BlockingQueue<BufferedImage> freeFrames = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            freeFrames.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+        }
+        // Bounds encoded frames waiting for the writer as well as frames being encoded
+        Semaphore inFlight = new Semaphore(bufferCount * 2);
+
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r, "timelapse-encoder");
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorService writerThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "timelapse-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<?>> writes = new ArrayDeque<>();
+
+        try {
+            int[] canvasPixels = PixelKernels.pixelsOf(renderer.getCanvas());
+            for (int i = 0; i < frames; i++) {
+                Rectangle changed = renderer.advance(elementsPerFrame);
+                inFlight.acquire();
+                BufferedImage frame = freeFrames.take();
+                PixelKernels.copy(canvasPixels, 0, PixelKernels.pixelsOf(frame), 0, canvasPixels.length);
+
+                int index = i;
+                Future<T> encoded = workers.submit(() -> {
+                    try {
+                        return encoder.encode(frame, changed, index);
+                    } finally {
+                        freeFrames.add(frame);
+                    }
+                });
+                // A single-threaded executor runs writes in submission order
+                writes.add(writerThread.submit(() -> {
+                    try {
+                        encoder.write(encoded.get(), index);
+                        progressListener.accept(index + 1);
+                        return null;
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+
+                // Stop rendering early once a frame has failed
+                while (!writes.isEmpty() && writes.peekFirst().isDone()) {
+                    checkDone(writes.pollFirst());
+                }
+            }
+            for (Future<?> write : writes) {
+                checkDone(write);
+            }
+            return frames;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Timelapse export interrupted");
+        } finally {
+            workers.shutdownNow();
+            writerThread.shutdownNow();
+            renderer.dispose();
+        }
+    }
+
+    /**
+     * Waits for a write and rethrows any failure from its encode or write stage.
+     */
+    private static void checkDone(Future<?> write) throws IOException, InterruptedException {
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while ((cause instanceof ExecutionException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Error encoding timelapse frame: " + cause, cause);
+        }
+    }
+
+    private IIOMetadata createGifMetadata(ImageWriter writer, GifFrame frame, boolean first) throws IOException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+            ImageTypeSpecifier.createFromRenderedImage(frame.image), null);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(GIF_METADATA_FORMAT);
+
+        IIOMetadataNode descriptor = getChild(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", Integer.toString(frame.x));
+        descriptor.setAttribute("imageTopPosition", Integer.toString(frame.y));
+
+        IIOMetadataNode control = getChild(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "doNotDispose");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(frameDelayMillis / 10));
+        control.setAttribute("transparentColorIndex", "0");
+
+        if (first) {
+            // NETSCAPE2.0 extension with a loop count of 0 repeats forever
+            IIOMetadataNode extensions = getChild(root, "ApplicationExtensions");
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[]{1, 0, 0});
+            extensions.appendChild(loop);
+        }
+
+        metadata.setFromTree(GIF_METADATA_FORMAT, root);
+        return metadata;
+    }
+
+    private static IIOMetadataNode getChild(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equalsIgnoreCase(name)) {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        root.appendChild(node);
+        return node;
+    }
+
+    /**
+     * Nearest palette entry for every 15-bit colour, built once on first use.
+     */
+    private static synchronized byte[] getGifLookup() {
+        if (gifLookup != null) return gifLookup;
+
+        int size = GIF_PALETTE.getMapSize();
+        int[] rgb = new int[size];
+        GIF_PALETTE.getRGBs(rgb);
+        byte[] lookup = new byte[1 << 15];
+        for (int c = 0; c < lookup.length; c++) {
+            // Expand each 5-bit channel to the centre of its 8-bit range
+            int r = ((c >> 10) & 0x1F) << 3 | 4;
+            int g = ((c >> 5) & 0x1F) << 3 | 4;
+            int b = (c & 0x1F) << 3 | 4;
+            int best = 0, bestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int dr = ((rgb[i] >> 16) & 0xFF) - r;
+                int dg = ((rgb[i] >> 8) & 0xFF) - g;
+                int db = (rgb[i] & 0xFF) - b;
+                int distance = dr * dr + dg * dg + db * db;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+            lookup[c] = (byte) best;
+        }
+        gifLookup = lookup;
+        return lookup;
+    }
+
+    /**
+     * Encoding stages of one output format.
+     */
+    private interface FrameEncoder<T> {
+        /** Runs on an encoder thread; frames may be encoded in any order. */
+        T encode(BufferedImage frame, Rectangle changed, int index) throws IOException;
+
+        /** Runs on the writer thread, in frame order. */
+        void write(T encoded, int index) throws IOException;
+    }
+
+    /**
+     * A quantized GIF frame and its position on the canvas.
+     */
+    private static final class GifFrame {
+        final BufferedImage image;
+        final int x, y;
+
+        GifFrame(BufferedImage image, int x, int y) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 2) {
+            System.out.println("Usage: TimelapseExporter <trace file> <output.gif | output directory>"
+                + " [--elements-per-frame N] [--workers N] [--delay ms]");
+            System.exit(2);
+        }
+
+        File output = new File(args[1]);
+        int perFrame = -1, workers = -1, delay = -1;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--elements-per-frame": perFrame = Integer.parseInt(args[i + 1]); break;
+                case "--workers": workers = Integer.parseInt(args[i + 1]); break;
+                case "--delay": delay = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        // Rebuild the drawing by replaying the trace without rendering
+        List<InputReplayer.TraceEvent> events = InputReplayer.readTrace(new File(args[0]));
+        PaintPanel[] holder = new PaintPanel[1];
+        SwingUtilities.invokeAndWait(() -> {
+            holder[0] = new PaintPanel();
+            holder[0].setSize(InputReplayer.DEFAULT_WIDTH, InputReplayer.DEFAULT_HEIGHT);
+        });
+        new InputReplayer(holder[0]).applyAll(events);
+
+        List<DrawingElement> timeline = holder[0].getTimeline();
+        TimelapseExporter exporter = new TimelapseExporter(timeline, holder[0].getWidth(), holder[0].getHeight());
+        if (perFrame > 0) exporter.setElementsPerFrame(perFrame);
+        if (workers > 0) exporter.setWorkerCount(workers);
+        if (delay > 0) exporter.setFrameDelayMillis(delay);
+
+        long start = System.nanoTime();
+        boolean gif = output.getName().toLowerCase().endsWith(".gif");
+        int frames = gif ? exporter.exportGif(output) : exporter.exportPngSequence(output);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("Exported %d elements as %d frames to %s in %.1f ms%n",
+            timeline.size(), frames, output, elapsed / 1e6);
+        System.exit(0);
+    }
+}